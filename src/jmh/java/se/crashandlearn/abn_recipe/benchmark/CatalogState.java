@@ -0,0 +1,74 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+import se.crashandlearn.abn_recipe.bulk.RecipeImporter;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Application context on an in-memory database seeded with a synthetic catalog of the given size.
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    private static final int SEED_CHUNK = 50_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int recipes;
+
+    ConfigurableApplicationContext context;
+
+    RecipeRepository repository;
+
+    long[] ids;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        context = new SpringApplicationBuilder(AbnRecipeApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "spring.jpa.properties.hibernate.order_inserts=true",
+                        "spring.cache.type=none",
+                        "logging.level.root=WARN")
+                .run();
+        repository = context.getBean(RecipeRepository.class);
+
+        RecipeImporter importer = context.getBean(RecipeImporter.class);
+        ObjectMapper mapper = context.getBean(ObjectMapper.class);
+        SyntheticCatalog catalog = new SyntheticCatalog(42);
+        for (int seeded = 0; seeded < recipes; seeded += SEED_CHUNK) {
+            StringBuilder ndjson = new StringBuilder();
+            for (int i = seeded; i < Math.min(recipes, seeded + SEED_CHUNK); i++) {
+                ndjson.append(mapper.writeValueAsString(catalog.next())).append('\n');
+            }
+            importer.importRecipes(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        EntityManager entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            ids = entityManager.createQuery("select r.id from Recipe r", Long.class)
+                    .getResultStream()
+                    .mapToLong(Long::longValue)
+                    .toArray();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        context.close();
+    }
+}
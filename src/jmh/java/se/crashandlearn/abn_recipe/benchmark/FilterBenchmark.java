@@ -0,0 +1,54 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code findFiltered} with each filter alone and all of them combined.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    @Param({"vegetarian", "servings", "includes", "excludes", "keywords", "combined"})
+    public String filter;
+
+    private Optional<Boolean> vegetarian = Optional.empty();
+    private Optional<Integer> servings = Optional.empty();
+    private Optional<List<String>> includes = Optional.empty();
+    private Optional<List<String>> excludes = Optional.empty();
+    private Optional<List<String>> keywords = Optional.empty();
+
+    @Setup(Level.Trial)
+    public void filters() {
+        boolean combined = filter.equals("combined");
+        if (combined || filter.equals("vegetarian")) {
+            vegetarian = Optional.of(true);
+        }
+        if (combined || filter.equals("servings")) {
+            servings = Optional.of(10);
+        }
+        if (combined || filter.equals("includes")) {
+            includes = Optional.of(List.of("Garlic", "Tomato"));
+        }
+        if (combined || filter.equals("excludes")) {
+            excludes = Optional.of(List.of("Salt"));
+        }
+        if (combined || filter.equals("keywords")) {
+            keywords = Optional.of(List.of("simmer", "golden"));
+        }
+    }
+
+    @Benchmark
+    public List<Recipe> findFiltered(CatalogState catalog) {
+        return catalog.repository.findFiltered(vegetarian, servings, includes, excludes, keywords);
+    }
+}
@@ -0,0 +1,111 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeSummary;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code findFilteredSummaries} and the first keyset page of {@code findFiltered} on H2 file databases
+ * with the filter indexes of {@code V2__filter_indexes.sql} and without them ({@code spring.flyway.target=1}).
+ * <p>
+ * The databases are seeded once into <i>target/benchmark</i> and reused by later runs, delete the
+ * directory after changing the catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+
+    private static final Path DIRECTORY = Path.of("target", "benchmark");
+
+    private static final int PAGE = 100;
+
+    @Param({"1000000"})
+    public int recipes;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    @Param({"vegetarian", "servings", "includes", "combined"})
+    public String filter;
+
+    private ConfigurableApplicationContext context;
+
+    private RecipeRepository repository;
+
+    private Optional<Boolean> vegetarian = Optional.empty();
+    private Optional<Integer> servings = Optional.empty();
+    private Optional<List<String>> includes = Optional.empty();
+    private Optional<List<String>> excludes = Optional.empty();
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        // Seeded without indexes, the indexed copy gets them from its migration in one go
+        String seeded = "recipes-" + recipes;
+        if (!Files.exists(DIRECTORY.resolve(seeded + ".mv.db"))) {
+            context = start(seeded, "1");
+            SyntheticCatalog.seed(context, recipes);
+            context.close();
+        }
+        String database = indexed ? seeded + "-indexed" : seeded;
+        if (!Files.exists(DIRECTORY.resolve(database + ".mv.db"))) {
+            Files.copy(DIRECTORY.resolve(seeded + ".mv.db"), DIRECTORY.resolve(database + ".mv.db"));
+        }
+        context = start(database, indexed ? "latest" : "1");
+        repository = context.getBean(RecipeRepository.class);
+
+        boolean combined = filter.equals("combined");
+        if (combined || filter.equals("vegetarian")) {
+            vegetarian = Optional.of(true);
+        }
+        if (combined || filter.equals("servings")) {
+            servings = Optional.of(12);
+        }
+        if (combined || filter.equals("includes")) {
+            includes = Optional.of(List.of("Ingredient 1500"));
+        }
+        if (combined) {
+            excludes = Optional.of(List.of("Salt"));
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String database, String migration) {
+        return new SpringApplicationBuilder(AbnRecipeApplication.class)
+                .web(WebApplicationType.NONE)
+                // As arguments, so they take precedence over application.properties
+                .run("--spring.datasource.url=jdbc:h2:file:" + DIRECTORY.resolve(database).toAbsolutePath(),
+                        "--spring.flyway.target=" + migration,
+                        "--spring.cache.type=none",
+                        "--logging.level.root=WARN");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<RecipeSummary> summaries() {
+        return repository.findFilteredSummaries(vegetarian, servings, includes, excludes, Optional.empty());
+    }
+
+    @Benchmark
+    public List<Recipe> firstPage() {
+        return repository.findFiltered(vegetarian, servings, includes, excludes, Optional.empty(), Optional.empty(), PAGE);
+    }
+}
@@ -0,0 +1,25 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code findById} of a random recipe, with the recipe cache disabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LookupBenchmark {
+
+    @Benchmark
+    public Optional<Recipe> findById(CatalogState catalog) {
+        long id = catalog.ids[ThreadLocalRandom.current().nextInt(catalog.ids.length)];
+        return catalog.repository.findById(id);
+    }
+}
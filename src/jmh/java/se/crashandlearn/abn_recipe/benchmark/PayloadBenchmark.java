@@ -0,0 +1,79 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.DefaultLinkRelationProvider;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writing a response of {@code recipes} recipes as HAL in JSON or CBOR, uncompressed or gzipped at the
+ * level Tomcat uses. A single recipe stands for {@code GET /recipes/{id}}, a hundred for a page of
+ * {@code GET /recipes}. The size of each response is printed when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PayloadBenchmark {
+
+    @Param({"1", "100"})
+    public int recipes;
+
+    @Param({"json", "cbor"})
+    public String format;
+
+    @Param({"none", "gzip"})
+    public String compression;
+
+    private ObjectMapper mapper;
+
+    private Object response;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticCatalog catalog = new SyntheticCatalog(42);
+        List<EntityModel<Recipe>> models = new ArrayList<>(recipes);
+        for (long id = 1; id <= recipes; id++) {
+            Recipe recipe = catalog.next();
+            recipe.setId(id);
+            models.add(EntityModel.of(recipe,
+                    Link.of("http://localhost:8080/recipes/" + id),
+                    Link.of("http://localhost:8080/recipes", "recipes")));
+        }
+        response = recipes == 1 ? models.get(0) : CollectionModel.of(models, Link.of("http://localhost:8080/recipes?limit=" + recipes));
+
+        mapper = new ObjectMapper("cbor".equals(format) ? new CBORFactory() : new JsonFactory());
+        mapper.registerModule(new Jackson2HalModule());
+        mapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultLinkRelationProvider(), CurieProvider.NONE, MessageResolver.DEFAULTS_ONLY));
+
+        System.out.printf("%n%d recipes as %s, %s: %d bytes%n", recipes, format, compression, write().length);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = "gzip".equals(compression) ? new GZIPOutputStream(bytes) : bytes) {
+            mapper.writeValue(out, response);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.DefaultLinkRelationProvider;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import se.crashandlearn.abn_recipe.controller.RecipeModelAssembler;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a page of recipes into HAL: assembling the models with their links, and serializing them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderingBenchmark {
+
+    @Param({"1000"})
+    public int pageSize;
+
+    @Param({"false", "true"})
+    public boolean precomputedLinks;
+
+    private List<Recipe> recipes;
+
+    private RecipeModelAssembler assembler;
+
+    private ObjectMapper halMapper;
+
+    private CollectionModel<EntityModel<Recipe>> page;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticCatalog catalog = new SyntheticCatalog(42);
+        recipes = new ArrayList<>(pageSize);
+        for (long id = 1; id <= pageSize; id++) {
+            Recipe recipe = catalog.next();
+            recipe.setId(id);
+            recipes.add(recipe);
+        }
+
+        assembler = new RecipeModelAssembler();
+        ReflectionTestUtils.setField(assembler, "precomputedLinks", precomputedLinks);
+
+        halMapper = new ObjectMapper();
+        halMapper.registerModule(new Jackson2HalModule());
+        halMapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultLinkRelationProvider(), CurieProvider.NONE, MessageResolver.DEFAULTS_ONLY));
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("GET", "/recipes")));
+        page = assemble();
+    }
+
+    @Benchmark
+    public CollectionModel<EntityModel<Recipe>> assemble() {
+        return CollectionModel.of(recipes.stream().map(assembler::toModel).toList());
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return halMapper.writeValueAsBytes(page);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+}
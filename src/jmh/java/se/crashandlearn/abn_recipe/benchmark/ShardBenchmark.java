@@ -0,0 +1,94 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+import se.crashandlearn.abn_recipe.bulk.RecipeImporter;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Search throughput with the catalog partitioned over in-memory H2 shards, against a single database
+ * ({@code shards=0}). The full search scans the instructions of every recipe, the page reads the first
+ * recipes with an ingredient in id order.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ShardBenchmark {
+
+    private static final int SEED_CHUNK = 50_000;
+
+    private static final int PAGE = 100;
+
+    @Param({"0", "1", "2", "4"})
+    public int shards;
+
+    @Param({"100000"})
+    public int recipes;
+
+    private ConfigurableApplicationContext context;
+
+    private RecipeRepository repository;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        List<String> properties = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:benchmark",
+                "spring.cache.type=none",
+                "logging.level.root=WARN"));
+        if (shards > 0) {
+            properties.add("recipe.shards.enabled=true");
+            properties.add("recipe.shards.urls=" + IntStream.range(0, shards)
+                    .mapToObj(shard -> "jdbc:h2:mem:benchmark-shard-" + shard)
+                    .collect(Collectors.joining(",")));
+        }
+        context = new SpringApplicationBuilder(AbnRecipeApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties.toArray(new String[0]))
+                .run();
+        repository = context.getBean(RecipeRepository.class);
+
+        RecipeImporter importer = context.getBean(RecipeImporter.class);
+        ObjectMapper mapper = context.getBean(ObjectMapper.class);
+        SyntheticCatalog catalog = new SyntheticCatalog(42);
+        for (int seeded = 0; seeded < recipes; seeded += SEED_CHUNK) {
+            StringBuilder ndjson = new StringBuilder();
+            for (int i = seeded; i < Math.min(recipes, seeded + SEED_CHUNK); i++) {
+                ndjson.append(mapper.writeValueAsString(catalog.next())).append('\n');
+            }
+            importer.importRecipes(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Recipe> search() {
+        return repository.findFiltered(Optional.of(true), Optional.of(4), Optional.of(List.of("Garlic")), Optional.empty(), Optional.of(List.of("simmer", "golden")));
+    }
+
+    @Benchmark
+    public List<Recipe> page() {
+        return repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Garlic")), Optional.empty(), Optional.empty(), Optional.empty(), PAGE);
+    }
+}
@@ -0,0 +1,122 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Latency of the first requests after starting the prod profile on a file database of {@code recipes}
+ * recipes (default 1M), with and without the storage warm-up. Each start runs in a JVM of its own, so
+ * neither profits from the code the other compiled. The database is seeded into <i>target/benchmark</i>
+ * on the first run. The operating system keeps the file cached between starts, so cold means the
+ * database cache is empty, not that the file is read from disk. Cold and warm starts alternate for
+ * {@code rounds} rounds (default 5), as the first requests of a single start vary widely. Run through
+ * <pre>mvn -Pbenchmark -DskipTests verify -Dbenchmark.main=se.crashandlearn.abn_recipe.benchmark.StartupLatency -Djmh.args=</pre>
+ */
+public class StartupLatency {
+
+    private static final int RECIPES = Integer.getInteger("recipes", 1_000_000);
+
+    private static final int REQUESTS = Integer.getInteger("requests", 200);
+
+    private static final int ROUNDS = Integer.getInteger("rounds", 5);
+
+    private static final Path STORAGE = Path.of("target", "benchmark", "prod-" + RECIPES).toAbsolutePath();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            measure(Boolean.parseBoolean(args[0]));
+            System.exit(0);
+        }
+
+        try (ConfigurableApplicationContext context = start(false)) {
+            if (context.getBean(RecipeRepository.class).count() < RECIPES) {
+                SyntheticCatalog.seed(context, RECIPES);
+            }
+        }
+        System.out.printf("%-5s %10s %-10s %9s %9s %9s%n", "start", "startup ms", "request", "first ms", "p50 ms", "p99 ms");
+        for (int round = 0; round < ROUNDS; round++) {
+            fork(false);
+            fork(true);
+        }
+        System.exit(0);
+    }
+
+    private static void fork(boolean warmup) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx2g",
+                "-Drecipes=" + RECIPES,
+                "-Drequests=" + REQUESTS,
+                "-classpath", System.getProperty("java.class.path"),
+                StartupLatency.class.getName(),
+                String.valueOf(warmup))
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        process.waitFor();
+    }
+
+    private static void measure(boolean warmup) throws Exception {
+        long started = System.nanoTime();
+        try (ConfigurableApplicationContext context = start(warmup)) {
+            double startup = (System.nanoTime() - started) / 1e6;
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newHttpClient();
+            Random random = new Random(7);
+            List<Long> pages = new ArrayList<>();
+            List<Long> lookups = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                // Ids of the newest tenth, the recipes most likely to be asked for
+                long id = RECIPES - random.nextInt(Math.max(1, RECIPES / 10));
+                pages.add(time(client, URI.create("http://localhost:" + port + "/recipes?limit=100&after=" + id)));
+                lookups.add(time(client, URI.create("http://localhost:" + port + "/recipes/" + id)));
+            }
+            String start = warmup ? "warm" : "cold";
+            print(start, startup, "page", pages);
+            print(start, startup, "by id", lookups);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean warmup) {
+        return new SpringApplicationBuilder(AbnRecipeApplication.class)
+                .profiles("prod")
+                // As arguments, so they take precedence over the profile
+                .run("--server.port=0",
+                        "--recipe.storage.dir=" + STORAGE,
+                        "--recipe.storage.warmup.enabled=" + warmup,
+                        "--logging.level.root=WARN",
+                        "--spring.main.banner-mode=off");
+    }
+
+    private static long time(HttpClient client, URI uri) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(uri + " returned " + response.statusCode());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void print(String start, double startup, String request, List<Long> latencies) {
+        long first = latencies.get(0);
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("%-5s %10.0f %-10s %9.1f %9.1f %9.1f%n", start, startup, request, first / 1e6,
+                sorted.get(sorted.size() / 2) / 1e6,
+                sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * 0.99))) / 1e6);
+    }
+}
@@ -0,0 +1,113 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import org.springframework.context.ApplicationContext;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Generates reproducible recipes. Ingredient popularity is heavily skewed, as in real recipe
+ * collections: a few staples like salt and flour are in most recipes, most ingredients in few.
+ */
+class SyntheticCatalog {
+
+    static final List<String> STAPLES = List.of(
+            "Salt", "Pepper", "Olive oil", "Butter", "Onion", "Garlic", "Flour", "Sugar", "Egg", "Milk",
+            "Water", "Tomato", "Potato", "Carrot", "Lemon", "Parsley", "Rice", "Cheese", "Cream", "Basil");
+
+    static final List<String> MEAT = List.of("Chicken", "Beef", "Pork", "Bacon", "Lamb", "Salmon", "Tuna", "Shrimp");
+
+    private static final List<String> WORDS = List.of(
+            "chop", "slice", "dice", "mix", "stir", "knead", "bake", "boil", "simmer", "fry", "roast", "grill",
+            "season", "serve", "the", "and", "until", "golden", "soft", "minutes", "oven", "pan", "pot", "bowl",
+            "dough", "sauce", "heat", "medium", "low", "high", "add", "remove", "cool", "cover", "rest", "whisk");
+
+    private static final int LONG_TAIL = 2000;
+
+    private static final int SEED_CHUNK = 10_000;
+
+    private final Random random;
+
+    SyntheticCatalog(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Writes {@code recipes} recipes with JDBC batches into an empty database, as going through Hibernate
+     * takes too long for a file database.
+     */
+    static void seed(ApplicationContext context, int recipes) {
+        IngredientDictionary dictionary = context.getBean(IngredientDictionary.class);
+        SyntheticCatalog catalog = new SyntheticCatalog(42);
+        try (Connection connection = context.getBean(DataSource.class).getConnection();
+             PreparedStatement recipe = connection.prepareStatement("insert into recipe (id, title, vegetarian, servings, instruction) values (?, ?, ?, ?, ?)");
+             PreparedStatement ingredient = connection.prepareStatement("insert into recipe_ingredient (recipe_id, ingredient_id) values (?, ?)");
+             Statement sequence = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            for (long id = 1; id <= recipes; id++) {
+                Recipe next = catalog.next();
+                recipe.setLong(1, id);
+                recipe.setString(2, next.getTitle());
+                recipe.setBoolean(3, next.isVegetarian());
+                recipe.setInt(4, next.getServings());
+                recipe.setString(5, next.getInstruction());
+                recipe.addBatch();
+                for (String name : next.getIngredients()) {
+                    ingredient.setLong(1, id);
+                    ingredient.setInt(2, dictionary.id(name));
+                    ingredient.addBatch();
+                }
+                if (id % SEED_CHUNK == 0 || id == recipes) {
+                    recipe.executeBatch();
+                    ingredient.executeBatch();
+                    connection.commit();
+                }
+            }
+            sequence.execute("alter sequence recipe_seq restart with " + (recipes + 1));
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not seed the benchmark database", e);
+        }
+    }
+
+    Recipe next() {
+        Set<String> ingredients = new HashSet<>();
+        int count = 4 + random.nextInt(9);
+        while (ingredients.size() < count) {
+            ingredients.add(ingredient());
+        }
+        boolean vegetarian = random.nextInt(100) < 35;
+        if (!vegetarian) {
+            ingredients.add(MEAT.get(random.nextInt(MEAT.size())));
+        }
+        return Recipe.builder()
+                .title("Recipe " + random.nextInt(1_000_000))
+                .vegetarian(vegetarian)
+                .servings(1 + random.nextInt(12))
+                .ingredients(ingredients)
+                .instruction(instruction())
+                .build();
+    }
+
+    private String ingredient() {
+        // Cubing a uniform value puts most picks on the first, most popular ingredients
+        double skewed = Math.pow(random.nextDouble(), 3);
+        int rank = (int) (skewed * (STAPLES.size() + LONG_TAIL));
+        return rank < STAPLES.size() ? STAPLES.get(rank) : "Ingredient " + (rank - STAPLES.size());
+    }
+
+    private String instruction() {
+        StringBuilder instruction = new StringBuilder();
+        int words = 20 + random.nextInt(40);
+        for (int i = 0; i < words; i++) {
+            instruction.append(i == 0 ? "" : " ").append(WORDS.get(random.nextInt(WORDS.size())));
+        }
+        return instruction.append('.').toString();
+    }
+}
@@ -0,0 +1,156 @@
+package se.crashandlearn.abn_recipe.benchmark;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares Tomcat's worker pool with virtual threads under a growing number of concurrent requests
+ * waiting on a slow database.
+ * <p>
+ * Every database connection takes {@code latency.ms} (default 20) before it is handed out, while
+ * {@code concurrency} clients search recipes in a loop. Meanwhile a single client measures the latency of
+ * a request that does not use the database. Run with Java 21 through
+ * <pre>mvn -Pbenchmark -DskipTests verify -Dbenchmark.main=se.crashandlearn.abn_recipe.benchmark.VirtualThreadLoadTest -Djmh.args=</pre>
+ */
+public class VirtualThreadLoadTest {
+
+    private static final int[] CONCURRENCY = {50, 200, 800, 2000};
+
+    private static final Duration RUN = Duration.ofSeconds(Long.getLong("run.seconds", 10));
+
+    private static final long LATENCY_MILLIS = Long.getLong("latency.ms", 20);
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-9s %11s %12s %12s %12s %8s%n", "mode", "concurrency", "searches/s", "probe p50 ms", "probe p99 ms", "errors");
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext context = start(virtual)) {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                for (int concurrency : CONCURRENCY) {
+                    run(virtual ? "virtual" : "platform", port, concurrency);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtual) {
+        return new SpringApplicationBuilder(AbnRecipeApplication.class, SlowDatabase.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:load",
+                        "spring.datasource.hikari.connection-timeout=60000",
+                        "recipe.datasource.acquire-timeout-ms=60000",
+                        "management.health.db.enabled=false",
+                        "recipe.threads.virtual.enabled=" + virtual,
+                        "logging.level.root=WARN")
+                .run();
+    }
+
+    private static void run(String mode, int port, int concurrency) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newCachedThreadPool()).build();
+        URI search = URI.create("http://localhost:" + port + "/recipes?vegetarian=true");
+        URI probe = URI.create("http://localhost:" + port + "/actuator/health");
+        long end = System.nanoTime() + RUN.toNanos();
+        AtomicLong searches = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+
+        ExecutorService load = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            load.execute(() -> {
+                while (System.nanoTime() < end) {
+                    if (send(client, search)) {
+                        searches.incrementAndGet();
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        List<Long> probes = new ArrayList<>();
+        Thread.sleep(1000);
+        do {
+            long start = System.nanoTime();
+            if (!send(client, probe)) {
+                errors.incrementAndGet();
+            }
+            probes.add(System.nanoTime() - start);
+            Thread.sleep(10);
+        } while (System.nanoTime() < end);
+        load.shutdown();
+        load.awaitTermination(2, TimeUnit.MINUTES);
+
+        Collections.sort(probes);
+        System.out.printf("%-9s %11d %12.0f %12.1f %12.1f %8d%n", mode, concurrency,
+                searches.get() / (double) RUN.toSeconds(),
+                percentile(probes, 0.50), percentile(probes, 0.99), errors.get());
+    }
+
+    private static boolean send(HttpClient client, URI uri) {
+        try {
+            return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        return sorted.get((int) Math.min(sorted.size() - 1, sorted.size() * percentile)) / 1e6;
+    }
+
+    /**
+     * Delays every connection by {@code latency.ms}, standing in for a database across the network.
+     */
+    @Configuration(proxyBeanMethods = false)
+    static class SlowDatabase {
+
+        @Bean
+        static BeanPostProcessor slowDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource)) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            Connection connection = super.getConnection();
+                            try {
+                                Thread.sleep(LATENCY_MILLIS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return connection;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -2,8 +2,10 @@ package se.crashandlearn.abn_recipe;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 
 @SpringBootApplication
+@EnableCaching
 public class AbnRecipeApplication {
 
     public static void main(String[] args) {
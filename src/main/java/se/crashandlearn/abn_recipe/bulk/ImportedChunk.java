@@ -0,0 +1,14 @@
+package se.crashandlearn.abn_recipe.bulk;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one chunk of a bulk import. A failed chunk has saved nothing and carries the error.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ImportedChunk(int chunk, int saved, String error) {
+
+    static ImportedChunk failed(int chunk, String error) {
+        return new ImportedChunk(chunk, 0, error);
+    }
+}
@@ -0,0 +1,125 @@
+package se.crashandlearn.abn_recipe.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reads recipes one at a time from a JSON array or newline delimited JSON, and saves them in
+ * chunks of {@code recipe.bulk.chunk-size}, each in its own transaction. Recipes with an id
+ * update the existing recipe, the others are created.
+ * <p>
+ * A chunk that cannot be written is logged, reported without the cause and skipped. Invalid JSON ends
+ * the import, the chunks before it stay saved.
+ * <p>
+ * New ingredients of a chunk are added to the {@link IngredientDictionary} before its transaction starts.
+ * Imported recipes do not carry a version, they take the version of the stored recipe, so an import
+ * overwrites changes made since that recipe was exported. The stored recipes of a chunk are loaded with
+ * their ingredients in one query before it is saved, so updates are merged without reading every recipe.
+ */
+@Slf4j
+@Component
+public class RecipeImporter {
+
+    private final RecipeRepository repository;
+
+    private final TransactionTemplate transaction;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final IngredientDictionary dictionary;
+
+    private final RecipeChangeLog changeLog;
+
+    private final ObjectReader reader;
+
+    private final int chunkSize;
+
+    RecipeImporter(RecipeRepository repository,
+                   PlatformTransactionManager transactionManager,
+                   ApplicationEventPublisher eventPublisher,
+                   ObjectMapper objectMapper,
+                   IngredientDictionary dictionary,
+                   RecipeChangeLog changeLog,
+                   @Value("${recipe.bulk.chunk-size:5000}") int chunkSize) {
+        this.repository = repository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.dictionary = dictionary;
+        this.changeLog = changeLog;
+        this.reader = objectMapper.readerFor(Recipe.class);
+        this.chunkSize = chunkSize;
+    }
+
+    public List<ImportedChunk> importRecipes(InputStream json) throws IOException {
+        List<ImportedChunk> results = new ArrayList<>();
+        List<Recipe> chunk = new ArrayList<>(chunkSize);
+        try (MappingIterator<Recipe> recipes = reader.readValues(json)) {
+            while (recipes.hasNextValue()) {
+                chunk.add(recipes.nextValue());
+                if (chunk.size() == chunkSize) {
+                    results.add(write(results.size(), chunk));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            results.add(ImportedChunk.failed(results.size(), e.getOriginalMessage()));
+            return results;
+        }
+        if (!chunk.isEmpty()) {
+            results.add(write(results.size(), chunk));
+        }
+        return results;
+    }
+
+    private ImportedChunk write(int number, List<Recipe> chunk) {
+        try {
+            chunk.forEach(recipe -> dictionary.addAll(recipe.getIngredients()));
+            transaction.executeWithoutResult(status -> {
+                Set<Long> existing = withCurrentVersions(chunk);
+                List<Recipe> saved = repository.saveAll(chunk);
+                changeLog.saved(saved, existing);
+                eventPublisher.publishEvent(new RecipesImportedEvent(saved));
+            });
+            return new ImportedChunk(number, chunk.size(), null);
+        } catch (RuntimeException e) {
+            log.warn("Could not import chunk {} of {} recipes", number, chunk.size(), e);
+            return ImportedChunk.failed(number, "The recipes could not be saved");
+        }
+    }
+
+    /**
+     * Returns the ids of the recipes of the chunk that already exist, leaving them in the persistence context.
+     */
+    private Set<Long> withCurrentVersions(List<Recipe> chunk) {
+        List<Long> ids = chunk.stream().map(Recipe::getId).filter(Objects::nonNull).toList();
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        Map<Long, Long> versions = repository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Recipe::getId, Recipe::getVersion));
+        chunk.forEach(recipe -> recipe.setVersion(versions.getOrDefault(recipe.getId(), 0L)));
+        return versions.keySet();
+    }
+}
@@ -0,0 +1,47 @@
+package se.crashandlearn.abn_recipe.cache;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the committed saves and deletes since startup, so a search result can be told apart from the
+ * results before and after any write without querying the catalog.
+ * <p>
+ * The counter is kept in memory and starts over on every start, so it is only meaningful together with
+ * {@link #epoch()}. Writes made by other instances of the application are not counted.
+ */
+@Component
+public class CatalogVersion {
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public long get() {
+        return version.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeSaved(RecipeSavedEvent event) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeDeleted(RecipeDeletedEvent event) {
+        version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipesImported(RecipesImportedEvent event) {
+        version.incrementAndGet();
+    }
+}
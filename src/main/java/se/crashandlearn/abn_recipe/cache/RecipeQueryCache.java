@@ -0,0 +1,119 @@
+package se.crashandlearn.abn_recipe.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Ids of the recipes matching a filter combination, so repeated searches only load the recipes.
+ * <p>
+ * Entries are keyed on the filters and the {@link CatalogVersion}, which is bumped after every
+ * committed save or delete, so a result computed before a write is never returned after it. The entries
+ * of older versions are dropped on the same events.
+ * <p>
+ * The search runs outside the cache, so that a slow search does not hold a lock of the cache. Two
+ * requests missing the same entry at once both search.
+ */
+@Component
+@ConditionalOnProperty(name = "recipe.query-cache.enabled", havingValue = "true")
+public class RecipeQueryCache {
+
+    private final Cache<Key, Matches> cache;
+
+    private final CatalogVersion catalogVersion;
+
+    RecipeQueryCache(@Value("${recipe.query-cache.max-ids:1000000}") long maxIds,
+                     CatalogVersion catalogVersion,
+                     MeterRegistry meterRegistry) {
+        this.catalogVersion = catalogVersion;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxIds)
+                .<Key, Matches>weigher((key, matches) -> Math.max(1, matches.ids().size()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "recipeQueries");
+    }
+
+    /**
+     * Filters in normalized form. Lists are sorted and without duplicates, as the order and
+     * repetition of the filters does not change which recipes match.
+     */
+    private record Key(long version,
+                       Optional<Boolean> vegetarian,
+                       Optional<Integer> servings,
+                       Optional<List<String>> includeIngredients,
+                       Optional<List<String>> excludeIngredients,
+                       Optional<List<String>> instructionKeywords) {
+    }
+
+    /**
+     * Matching ids in search order, and in ascending order for keyset pages.
+     */
+    public record Matches(List<Long> ids, long[] ascending) {
+
+        static Matches of(List<Long> ids) {
+            long[] ascending = ids.stream().mapToLong(Long::longValue).sorted().toArray();
+            return new Matches(List.copyOf(ids), ascending);
+        }
+
+        /**
+         * Returns at most {@code limit} ids greater than {@code after}, in ascending order.
+         */
+        public List<Long> page(long after, int limit) {
+            int from = Arrays.binarySearch(ascending, after);
+            from = from < 0 ? -from - 1 : from + 1;
+            int to = (int) Math.min(ascending.length, (long) from + limit);
+            return Arrays.stream(ascending, from, to).boxed().toList();
+        }
+    }
+
+    public Matches get(Optional<Boolean> vegetarian,
+                       Optional<Integer> servings,
+                       Optional<List<String>> includeIngredients,
+                       Optional<List<String>> excludeIngredients,
+                       Optional<List<String>> instructionKeywords,
+                       Supplier<List<Long>> search) {
+        Key key = new Key(catalogVersion.get(),
+                vegetarian,
+                servings,
+                normalize(includeIngredients),
+                normalize(excludeIngredients),
+                normalize(instructionKeywords));
+        Matches matches = cache.getIfPresent(key);
+        if (matches == null) {
+            matches = Matches.of(search.get());
+            cache.put(key, matches);
+        }
+        return matches;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeSaved(RecipeSavedEvent event) {
+        cache.invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeDeleted(RecipeDeletedEvent event) {
+        cache.invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipesImported(RecipesImportedEvent event) {
+        cache.invalidateAll();
+    }
+
+    private static Optional<List<String>> normalize(Optional<List<String>> values) {
+        return values.map(list -> List.copyOf(new TreeSet<>(list)));
+    }
+}
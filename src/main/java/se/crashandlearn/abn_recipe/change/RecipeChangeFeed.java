@@ -0,0 +1,168 @@
+package se.crashandlearn.abn_recipe.change;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.crashandlearn.abn_recipe.event.RecipeChangedEvent;
+import se.crashandlearn.abn_recipe.model.RecipeChange;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes committed recipe changes to subscribers as Server-Sent Events, each with its sequence number as
+ * event id so a client can resume with {@code Last-Event-ID}.
+ * <p>
+ * Changes are queued per subscriber, up to {@code recipe.changes.buffer-size} of them, and sent from a
+ * shared pool so a slow client never holds up a write. A subscriber whose queue is full is disconnected
+ * and catches up from the change log when it reconnects.
+ */
+@Slf4j
+@Component
+public class RecipeChangeFeed {
+
+    private static final int REPLAY_PAGE = 1000;
+
+    private final RecipeChangeLog changeLog;
+
+    private final int bufferSize;
+
+    private final long timeoutMillis;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor;
+
+    RecipeChangeFeed(RecipeChangeLog changeLog,
+                     @Value("${recipe.changes.buffer-size:1000}") int bufferSize,
+                     @Value("${recipe.changes.stream-timeout-ms:600000}") long timeoutMillis) {
+        this.changeLog = changeLog;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("change-feed-");
+        threads.setDaemon(true);
+        this.executor = Executors.newCachedThreadPool(threads);
+    }
+
+    /**
+     * Sends the changes after {@code since} from the change log, then every new change as it is committed.
+     */
+    public SseEmitter subscribe(long since) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, since);
+        // Registered before reading the log, so a change committed in between is queued
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscriber.schedule();
+        return emitter;
+    }
+
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    @EventListener
+    void onRecipeChanged(RecipeChangedEvent event) {
+        subscribers.forEach(subscriber -> subscriber.offer(event.change()));
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final Queue<RecipeChange> queue = new ArrayBlockingQueue<>(bufferSize);
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean disconnected;
+
+        private boolean replayed;
+
+        private long sent;
+
+        Subscriber(SseEmitter emitter, long since) {
+            this.emitter = emitter;
+            this.sent = since;
+        }
+
+        void offer(RecipeChange change) {
+            if (!queue.offer(change)) {
+                // Completing here could wait for a blocked send, so the sending thread does it
+                disconnected = true;
+                subscribers.remove(this);
+                log.info("Disconnecting a change feed subscriber more than {} changes behind", bufferSize);
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                if (!replayed) {
+                    List<RecipeChange> page;
+                    do {
+                        page = changeLog.since(sent, REPLAY_PAGE);
+                        for (RecipeChange change : page) {
+                            send(change);
+                        }
+                    } while (page.size() == REPLAY_PAGE && !disconnected);
+                    replayed = true;
+                }
+                RecipeChange change;
+                while (!disconnected && (change = queue.poll()) != null) {
+                    // Already sent from the log if committed during the replay
+                    if (change.getSeq() > sent) {
+                        send(change);
+                    }
+                }
+                if (disconnected) {
+                    emitter.complete();
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                // The client went away, the emitter has completed, or the log could not be read
+                disconnected = true;
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void send(RecipeChange change) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(change.getSeq()))
+                    .name("change")
+                    .data(change, MediaType.APPLICATION_JSON));
+            sent = change.getSeq();
+        }
+    }
+}
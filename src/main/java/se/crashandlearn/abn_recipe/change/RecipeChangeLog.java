@@ -0,0 +1,135 @@
+package se.crashandlearn.abn_recipe.change;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.crashandlearn.abn_recipe.event.RecipeChangedEvent;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeChange;
+import se.crashandlearn.abn_recipe.model.RecipeChange.Operation;
+import se.crashandlearn.abn_recipe.repository.RecipeChangeRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Records every change to a recipe in the {@code recipe_change} table, in the transaction of the change.
+ * <p>
+ * Sequence numbers are handed out when a change is recorded, but transactions commit in any order. So
+ * that a reader who has seen a change has seen every change before it, only changes up to the oldest one
+ * still in progress are readable, and they are published as {@link RecipeChangedEvent}s in that order.
+ * Numbers of rolled back changes are skipped. Numbers and progress are kept in memory, so only one
+ * instance of the application may write recipes.
+ */
+@Component
+public class RecipeChangeLog {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final RecipeChangeRepository repository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final SortedSet<Long> inProgress = new TreeSet<>();
+
+    private final SortedMap<Long, RecipeChange> committed = new TreeMap<>();
+
+    private boolean loaded;
+
+    private long assigned;
+
+    private long last;
+
+    RecipeChangeLog(RecipeChangeRepository repository, ApplicationEventPublisher eventPublisher) {
+        this.repository = repository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public void created(Recipe recipe) {
+        saved(List.of(recipe), Set.of());
+    }
+
+    public void updated(Recipe recipe) {
+        saved(List.of(recipe), Set.of(recipe.getId()));
+    }
+
+    /**
+     * Records the saved recipes, as updated if their id is one of the {@code existing} ids.
+     * <p>
+     * Saved recipes only take their new version when written, so they are flushed first. A conflicting
+     * concurrent update fails there, before a sequence number is taken.
+     */
+    public void saved(List<Recipe> recipes, Set<Long> existing) {
+        repository.flush();
+        for (Recipe recipe : recipes) {
+            record(existing.contains(recipe.getId()) ? Operation.UPDATED : Operation.CREATED, recipe.getId(), recipe.getVersion());
+        }
+    }
+
+    public void deleted(long id) {
+        record(Operation.DELETED, id, null);
+    }
+
+    /**
+     * The sequence number of the newest readable change, 0 if there is none.
+     */
+    public synchronized long last() {
+        load();
+        return last;
+    }
+
+    /**
+     * Returns at most {@code limit} readable changes after {@code since}, oldest first.
+     */
+    public List<RecipeChange> since(long since, int limit) {
+        return repository.findBySeqGreaterThanAndSeqLessThanEqualOrderBySeq(since, last(), PageRequest.of(0, limit));
+    }
+
+    private void record(Operation operation, long id, Long version) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Recipe changes are recorded in the transaction of the change");
+        }
+        RecipeChange change;
+        synchronized (this) {
+            load();
+            change = new RecipeChange(++assigned, id, operation, version, Instant.now());
+            inProgress.add(change.getSeq());
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                completed(change, status == STATUS_COMMITTED);
+            }
+        });
+        entityManager.persist(change);
+    }
+
+    private synchronized void completed(RecipeChange change, boolean commit) {
+        inProgress.remove(change.getSeq());
+        if (commit) {
+            committed.put(change.getSeq(), change);
+        }
+        while (!committed.isEmpty() && (inProgress.isEmpty() || committed.firstKey() < inProgress.first())) {
+            RecipeChange next = committed.remove(committed.firstKey());
+            last = next.getSeq();
+            eventPublisher.publishEvent(new RecipeChangedEvent(next));
+        }
+    }
+
+    private void load() {
+        if (!loaded) {
+            assigned = last = repository.findLastSeq().orElse(0L);
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package se.crashandlearn.abn_recipe.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Makes the caches configured by Spring Boot transaction aware: evictions and puts made in a transaction
+ * take effect after it commits. Evicting a recipe before its update is committed would let a concurrent
+ * read cache the old row again, which then stays until it expires.
+ */
+@Configuration(proxyBeanMethods = false)
+public class CacheConfiguration {
+
+    @Bean
+    static BeanPostProcessor transactionAwareCacheManager() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof CacheManager cacheManager && !(bean instanceof TransactionAwareCacheManagerProxy)) {
+                    return new TransactionAwareCacheManagerProxy(cacheManager);
+                }
+                return bean;
+            }
+        };
+    }
+}
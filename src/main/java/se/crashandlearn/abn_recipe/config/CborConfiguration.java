@@ -0,0 +1,29 @@
+package se.crashandlearn.abn_recipe.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.hateoas.mediatype.hal.HalMediaTypeConfiguration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Writes and reads recipes as CBOR when a client asks for {@code application/cbor}. The document is the
+ * same HAL document as the JSON one, with the same Jackson settings, only in a binary encoding that
+ * stores numbers and booleans compactly and strings without escaping.
+ * <p>
+ * Spring MVC registers a CBOR converter by itself when Jackson's CBOR module is present, this one
+ * replaces it so links are rendered as HAL instead of Spring HATEOAS' internal representation.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CborConfiguration {
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder, HalMediaTypeConfiguration hal) {
+        ObjectMapper mapper = builder.factory(new CBORFactory()).build();
+        return new MappingJackson2CborHttpMessageConverter(hal.configureObjectMapper(mapper));
+    }
+}
@@ -0,0 +1,28 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+
+import java.util.List;
+
+/**
+ * Recipes found by a search, written with the facet counts of all its matches next to the links.
+ */
+class FacetedRecipeModel extends CollectionModel<EntityModel<Recipe>> {
+
+    private final RecipeFacets facets;
+
+    FacetedRecipeModel(List<EntityModel<Recipe>> recipes, Link self, RecipeFacets facets) {
+        super(recipes, List.of(self), null);
+        this.facets = facets;
+    }
+
+    @JsonProperty("facets")
+    RecipeFacets getFacets() {
+        return facets;
+    }
+}
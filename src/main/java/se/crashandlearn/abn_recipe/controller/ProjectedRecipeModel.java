@@ -0,0 +1,50 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeField;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recipe model written with only the requested fields and the links, for recipes read with a projection.
+ */
+@JsonSerialize(using = ProjectedRecipeModel.Serializer.class)
+class ProjectedRecipeModel extends EntityModel<Recipe> {
+
+    private static final TypeReference<Map<String, Object>> PROPERTIES = new TypeReference<>() {
+    };
+
+    private final Set<RecipeField> fields;
+
+    ProjectedRecipeModel(Recipe recipe, Iterable<Link> links, Set<RecipeField> fields) {
+        super(recipe, links);
+        this.fields = fields;
+    }
+
+    static class Serializer extends JsonSerializer<ProjectedRecipeModel> {
+
+        @Override
+        public void serialize(ProjectedRecipeModel model, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            ObjectMapper mapper = (ObjectMapper) generator.getCodec();
+            Map<String, Object> properties = mapper.convertValue(model.getContent(), PROPERTIES);
+            Map<String, Object> projected = new LinkedHashMap<>();
+            for (RecipeField field : model.fields) {
+                if (properties.containsKey(field.attribute())) {
+                    projected.put(field.attribute(), properties.get(field.attribute()));
+                }
+            }
+            generator.writeObject(EntityModel.of(projected, model.getLinks()));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import se.crashandlearn.abn_recipe.change.RecipeChangeFeed;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
+import se.crashandlearn.abn_recipe.model.RecipeChange;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+@RestController
+@Profile("!reactive")
+public class RecipeChangeController {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final RecipeChangeLog changeLog;
+
+    private final RecipeChangeFeed feed;
+
+    RecipeChangeController(RecipeChangeLog changeLog, RecipeChangeFeed feed) {
+        this.changeLog = changeLog;
+        this.feed = feed;
+    }
+
+    @Operation(summary = "Returns the changes to recipes after a sequence number",
+               description = """
+    Every create, update and delete of a recipe is numbered in the order the changes become visible.
+     - since is the sequence number of the last change already seen, 0 for all changes.
+     - limit is the maximum number of changes to return, at most 1000. The next link of a full page points to the following page.
+     """)
+    @GetMapping("/recipes/changes")
+    CollectionModel<RecipeChange> changes(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "1000") int limit
+    ) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<RecipeChange> changes = changeLog.since(since, pageSize);
+
+        CollectionModel<RecipeChange> page = CollectionModel.of(changes,
+                linkTo(methodOn(RecipeChangeController.class).changes(since, pageSize)).withSelfRel());
+        if (changes.size() == pageSize) {
+            long last = changes.get(changes.size() - 1).getSeq();
+            page.add(linkTo(methodOn(RecipeChangeController.class).changes(last, pageSize)).withRel(IanaLinkRelations.NEXT));
+        }
+        return page;
+    }
+
+    @Operation(summary = "Streams the changes to recipes as server-sent events",
+               description = """
+    Sends every change after since, or after the Last-Event-ID of a reconnecting client, then every new change
+    as it is made. Without either only new changes are sent. The id of an event is the sequence number of the
+    change. A client too far behind is disconnected, and catches up when it reconnects.
+     """)
+    @GetMapping(value = "/recipes/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter stream(
+            @RequestParam Optional<Long> since,
+            @RequestHeader("Last-Event-ID") Optional<Long> lastEventId
+    ) {
+        return feed.subscribe(since.or(() -> lastEventId).orElseGet(changeLog::last));
+    }
+}
@@ -0,0 +1,72 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import se.crashandlearn.abn_recipe.cache.CatalogVersion;
+import se.crashandlearn.abn_recipe.model.Ingredient;
+
+import java.util.*;
+
+/**
+ * ETags for the searches of {@code GET /recipes}, made from the {@link CatalogVersion} and the filters in
+ * normalized form, so a search is answered with 304 Not Modified before the catalog is queried.
+ * <p>
+ * List parameters are split, sorted and without duplicates, and ingredients are in canonical form, as
+ * none of these change which recipes match. The {@code Accept} header is part of the tag, as it selects
+ * the representation. The tags are weak, as they stand for the matching recipes rather than the bytes of
+ * the response, and Tomcat does not compress responses with strong tags.
+ */
+@Component
+class RecipeCollectionETags implements HandlerInterceptor, WebMvcConfigurer {
+
+    private static final Set<String> INGREDIENT_PARAMETERS = Set.of("includesIngredients", "excludesIngredients");
+
+    private static final Set<String> LIST_PARAMETERS = Set.of("includesIngredients", "excludesIngredients", "instructionKeywords", "fields");
+
+    private final CatalogVersion catalogVersion;
+
+    RecipeCollectionETags(CatalogVersion catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/recipes");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"GET".equals(request.getMethod())
+                || !(handler instanceof HandlerMethod method)
+                || method.getBeanType() != RecipeController.class) {
+            return true;
+        }
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return !new ServletWebRequest(request, response).checkNotModified(eTag(request));
+    }
+
+    String eTag(HttpServletRequest request) {
+        Map<String, Collection<String>> filters = new TreeMap<>();
+        request.getParameterMap().forEach((name, values) -> filters.put(name, normalize(name, values)));
+        String key = filters + " " + request.getHeader(HttpHeaders.ACCEPT);
+        return "W/\"" + Long.toString(catalogVersion.epoch(), 36) + "." + catalogVersion.get() + "." + Integer.toHexString(key.hashCode()) + "\"";
+    }
+
+    private static Collection<String> normalize(String name, String[] values) {
+        if (!LIST_PARAMETERS.contains(name)) {
+            return List.of(values);
+        }
+        List<String> terms = new ArrayList<>();
+        for (String value : values) {
+            terms.addAll(Arrays.asList(value.split(",")));
+        }
+        return new TreeSet<>(INGREDIENT_PARAMETERS.contains(name) ? Ingredient.canonical(terms) : terms);
+    }
+}
@@ -1,37 +1,94 @@
 package se.crashandlearn.abn_recipe.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import se.crashandlearn.abn_recipe.bulk.ImportedChunk;
+import se.crashandlearn.abn_recipe.bulk.RecipeImporter;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.exception.InvalidFieldException;
+import se.crashandlearn.abn_recipe.exception.RecipeModifiedException;
 import se.crashandlearn.abn_recipe.exception.RecipeNotFoundException;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeField;
+import se.crashandlearn.abn_recipe.model.RecipePatch;
 import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+import se.crashandlearn.abn_recipe.writebehind.RecipeWriteBehind;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 
 @RestController
+@Profile("!reactive")
 public class RecipeController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final RecipeRepository repository;
 
     private final RecipeModelAssembler assembler;
 
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper objectMapper;
+
+    private final RecipeImporter importer;
+
+    private final RecipeChangeLog changeLog;
 
-    RecipeController(RecipeRepository recipeRepository, RecipeModelAssembler assembler) {
+    private final TransactionTemplate transaction;
+
+    private final IngredientDictionary dictionary;
+
+    private final Optional<RecipeWriteBehind> writeBehind;
+
+    RecipeController(RecipeRepository recipeRepository, RecipeModelAssembler assembler, ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper, RecipeImporter importer,
+                     RecipeChangeLog changeLog, PlatformTransactionManager transactionManager, IngredientDictionary dictionary,
+                     Optional<RecipeWriteBehind> writeBehind) {
         this.repository =  recipeRepository;
         this.assembler = assembler;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.importer = importer;
+        this.changeLog = changeLog;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.dictionary = dictionary;
+        this.writeBehind = writeBehind;
     }
 
     @Operation(summary = "Returns all recipes that fits filters",
@@ -42,6 +99,13 @@ public class RecipeController {
      - includesIngredients takes a list of strings that must all be present in the Ingredients section
      - excludesIngredient takes a list of strings that must all be missing from the Ingredients section
      - instructionKeywords takes a list of strings that must be present in the Instruction part of the recipe.
+       With the full-text index enabled, keywords match whole words in any case, a trailing * matches
+       word prefixes, and results are ordered by relevance.
+    The optional fields parameter lists the fields to return, e.g. fields=id,title,servings. Fields that
+    are not listed are not read from the database, the id is always returned.
+    With the optional facets parameter the matches are also counted: how many there are, how many are
+    vegetarian, how many per number of servings, and how many have each of the given number of most
+    common ingredients, e.g. facets=10.
      """)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found the recipe",
@@ -54,90 +118,389 @@ public class RecipeController {
             @RequestParam Optional<Integer> servings,
             @RequestParam Optional<List<String>> includesIngredients,
             @RequestParam Optional<List<String>> excludesIngredients,
-            @RequestParam Optional<List<String>> instructionKeywords
+            @RequestParam Optional<List<String>> instructionKeywords,
+            @RequestParam Optional<List<String>> fields,
+            @RequestParam Optional<Integer> facets
     ) {
+        Set<RecipeField> projection = projection(fields);
 
         List<EntityModel<Recipe>> recipes = repository.findFiltered(vegetarian,
                                                                     servings,
                                                                     includesIngredients,
                                                                     excludesIngredients,
-                                                                    instructionKeywords)
+                                                                    instructionKeywords,
+                                                                    Optional.empty(),
+                                                                    Integer.MAX_VALUE,
+                                                                    projection)
                 .stream()
-                .map(assembler::toModel)
+                .map(recipe -> assembler.toModel(recipe, projection))
                 .collect(Collectors.toList());
 
-        return CollectionModel.of(recipes, linkTo(methodOn(RecipeController.class)
+        Link self = linkTo(methodOn(RecipeController.class)
                     .find(vegetarian,
                           servings,
                           includesIngredients,
                           excludesIngredients,
-                          instructionKeywords))
-                    .withSelfRel().expand());
+                          instructionKeywords,
+                          fields,
+                          facets))
+                    .withSelfRel().expand();
+        return collection(recipes, self, vegetarian, servings, includesIngredients, excludesIngredients, instructionKeywords, facets);
+    }
+
+    @Operation(summary = "Returns one page of the recipes that fits filters",
+               description = """
+    Takes the same filters as the unpaged search, ordered by recipe id.
+     - limit is the maximum number of recipes to return, at most 1000.
+     - after is the id of the last recipe of the previous page, the next link of a full page points to the following page.
+     - fields lists the fields to return, as for the unpaged search.
+     - facets counts all matches, not only those of the page, as for the unpaged search.
+     """)
+    @GetMapping(value = "/recipes", params = "limit")
+    CollectionModel<EntityModel<Recipe>> findPage(
+            @RequestParam Optional<Boolean> vegetarian,
+            @RequestParam Optional<Integer> servings,
+            @RequestParam Optional<List<String>> includesIngredients,
+            @RequestParam Optional<List<String>> excludesIngredients,
+            @RequestParam Optional<List<String>> instructionKeywords,
+            @RequestParam Integer limit,
+            @RequestParam Optional<Long> after,
+            @RequestParam Optional<List<String>> fields,
+            @RequestParam Optional<Integer> facets
+    ) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Set<RecipeField> projection = projection(fields);
+
+        List<EntityModel<Recipe>> recipes = repository.findFiltered(vegetarian,
+                                                                    servings,
+                                                                    includesIngredients,
+                                                                    excludesIngredients,
+                                                                    instructionKeywords,
+                                                                    after,
+                                                                    pageSize,
+                                                                    projection)
+                .stream()
+                .map(recipe -> assembler.toModel(recipe, projection))
+                .collect(Collectors.toList());
+
+        Link self = linkTo(methodOn(RecipeController.class)
+                    .findPage(vegetarian,
+                              servings,
+                              includesIngredients,
+                              excludesIngredients,
+                              instructionKeywords,
+                              pageSize,
+                              after,
+                              fields,
+                              facets))
+                    .withSelfRel().expand();
+        CollectionModel<EntityModel<Recipe>> page = collection(recipes, self, vegetarian, servings, includesIngredients, excludesIngredients, instructionKeywords, facets);
+
+        if (recipes.size() == pageSize) {
+            Long last = recipes.get(recipes.size() - 1).getContent().getId();
+            page.add(linkTo(methodOn(RecipeController.class)
+                    .findPage(vegetarian,
+                              servings,
+                              includesIngredients,
+                              excludesIngredients,
+                              instructionKeywords,
+                              pageSize,
+                              Optional.of(last),
+                              fields,
+                              facets))
+                    .withRel(IanaLinkRelations.NEXT).expand());
+        }
+        return page;
+    }
+
+    @Operation(summary = "Streams all recipes that fits filters as newline delimited JSON",
+               description = "Takes the same filters as the unpaged search. Recipes are written as they are read from the database, so memory use does not grow with the number of results.")
+    @GetMapping(value = "/recipes", produces = APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> stream(
+            @RequestParam Optional<Boolean> vegetarian,
+            @RequestParam Optional<Integer> servings,
+            @RequestParam Optional<List<String>> includesIngredients,
+            @RequestParam Optional<List<String>> excludesIngredients,
+            @RequestParam Optional<List<String>> instructionKeywords
+    ) {
+        // Flushed after the newline rather than after the recipe, so that every line is sent whole
+        ObjectWriter writer = objectMapper.writerFor(Recipe.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = outputStream -> repository.scrollFiltered(vegetarian,
+                                                                              servings,
+                                                                              includesIngredients,
+                                                                              excludesIngredients,
+                                                                              instructionKeywords,
+                                                                              recipe -> {
+            try {
+                writer.writeValue(outputStream, recipe);
+                outputStream.write('\n');
+                outputStream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
+
     @PostMapping("/recipes")
     ResponseEntity<?> newRecipe(@RequestBody Recipe newRecipe) {
 
-        EntityModel<Recipe> entityModel = assembler.toModel(repository.save(newRecipe));
+        // New ingredients are added on a connection of their own, before the transaction holds one
+        dictionary.addAll(newRecipe.getIngredients());
+        Recipe savedRecipe = transaction.execute(status -> {
+            Recipe saved = repository.save(newRecipe);
+            changeLog.created(saved);
+            return saved;
+        });
+        eventPublisher.publishEvent(new RecipeSavedEvent(savedRecipe));
+
+        EntityModel<Recipe> entityModel = assembler.toModel(savedRecipe);
 
         return ResponseEntity
                 .created(entityModel.getRequiredLink(IanaLinkRelations.SELF).toUri())
                 .body(entityModel);
     }
 
+    @Operation(summary = "Creates or updates many recipes",
+               description = """
+    Takes a JSON array or newline delimited JSON of recipes, which is read as it arrives.
+    Recipes with an id update that recipe, the others are created. Recipes are saved in chunks,
+    each in its own transaction, and the result of every chunk is returned. A chunk that fails
+    is skipped, invalid JSON stops the import after the chunks saved so far.
+     """)
+    @PostMapping(value = "/recipes/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    List<ImportedChunk> importRecipes(InputStream recipes) throws IOException {
+
+        return importer.importRecipes(recipes);
+    }
+
     @Operation(summary = "Get a recipe by its id",
-               description = "Returns a specific recipe, or an error message if the recipe was not found.")
+               description = """
+    Returns a specific recipe, or an error message if the recipe was not found.
+    The ETag is the version of the recipe. With an If-None-Match header naming the current version,
+    or an If-Modified-Since header not older than the last change, 304 is returned without a body.
+     """)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found the recipe",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = Recipe.class)) }),
+            @ApiResponse(responseCode = "304", description = "Recipe not modified",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Recipe not found",
                     content = @Content) })
     @GetMapping("/recipes/{id}")
-    EntityModel<Recipe> getRecipeById(@PathVariable Long id) {
+    ResponseEntity<EntityModel<Recipe>> getRecipeById(@PathVariable Long id, WebRequest request) {
 
-        Recipe recipe = repository.findById(id)
+        Recipe recipe = find(id)
                 .orElseThrow(() -> new RecipeNotFoundException(id));
 
-        return assembler.toModel(recipe);
+        // Also sets the ETag and Last-Modified headers of the response
+        boolean notModified = recipe.getLastModified() == null
+                ? request.checkNotModified(eTag(recipe))
+                : request.checkNotModified(eTag(recipe), recipe.getLastModified().toEpochMilli());
+        // JSON and CBOR share the ETag, so caches must keep them apart by the Accept header
+        if (notModified) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).varyBy(HttpHeaders.ACCEPT).build();
+        }
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(assembler.toModel(recipe));
 
     }
     @Operation(summary = "Updates a recipe by its id",
-               description = "Updates recipe with given ID, or creates new recipe if id not found.")
+               description = """
+    Updates recipe with given ID, or creates new recipe if id not found.
+    With an If-Match header the recipe is only updated if it exists and has one of the given ETags,
+    otherwise 412 is returned. An update that conflicts with a concurrent one also returns 412.
+    With write-behind enabled, updates of existing recipes are written to the database within
+    recipe.write-behind.interval-ms. Until then the update is returned by id but not by searches.
+     """)
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Recipe updated or created",
                     content = { @Content(mediaType = "application/json",
-                            schema = @Schema(implementation = Recipe.class)) })
+                            schema = @Schema(implementation = Recipe.class)) }),
+            @ApiResponse(responseCode = "412", description = "Recipe changed since it was read",
+                    content = @Content)
                     })
     // It might be more accurate to return 200 OK here, not sure.
     // 201 returns Location headers correctly out of the box.
     @PutMapping("/recipes/{id}")
-    ResponseEntity<?> updateRecipe(@RequestBody Recipe newRecipe, @PathVariable Long id) {
-
-        Recipe updatedRecipe = repository.findById(id)
-                .map(recipe -> {
-                    recipe.setTitle(newRecipe.getTitle());
-                    recipe.setVegetarian(newRecipe.isVegetarian());
-                    recipe.setServings(newRecipe.getServings());
-                    recipe.setIngredients(newRecipe.getIngredients());
-                    recipe.setInstruction(newRecipe.getInstruction());
-                    recipe.setTitle(newRecipe.getTitle());
-                    return repository.save(recipe);
-                })
-                .orElseGet(() -> repository.save(newRecipe));
+    ResponseEntity<?> updateRecipe(@RequestBody Recipe newRecipe,
+                                   @PathVariable Long id,
+                                   @RequestHeader(HttpHeaders.IF_MATCH) Optional<String> ifMatch) {
+
+        Optional<Recipe> existing = find(id);
+        if (ifMatch.isPresent() && !existing.map(recipe -> matches(ifMatch.get(), eTag(recipe))).orElse(false)) {
+            throw new RecipeModifiedException(id);
+        }
+
+        dictionary.addAll(newRecipe.getIngredients());
+        Recipe updatedRecipe;
+        if (writeBehind.isPresent() && existing.isPresent()) {
+            // Written to the database with the next flush, which publishes the events
+            updatedRecipe = writeBehind.get().update(existing.get(), newRecipe);
+        } else {
+            try {
+                updatedRecipe = transaction.execute(status -> existing
+                        .map(recipe -> {
+                            // The found recipe may be shared through the cache, so it is replaced rather than modified.
+                            // It carries the version read, so a concurrent update in between is detected
+                            newRecipe.setId(recipe.getId());
+                            newRecipe.setVersion(recipe.getVersion());
+                            Recipe saved = repository.save(newRecipe);
+                            changeLog.updated(saved);
+                            return saved;
+                        })
+                        .orElseGet(() -> {
+                            Recipe saved = repository.save(newRecipe);
+                            changeLog.created(saved);
+                            return saved;
+                        }));
+            } catch (OptimisticLockingFailureException e) {
+                throw new RecipeModifiedException(id);
+            }
+            eventPublisher.publishEvent(new RecipeSavedEvent(updatedRecipe));
+        }
 
         EntityModel<Recipe> entityModel = assembler.toModel(updatedRecipe);
 
         return ResponseEntity
                 .created(entityModel.getRequiredLink(IanaLinkRelations.SELF).toUri()) //
+                .eTag(eTag(updatedRecipe))
+                .varyBy(HttpHeaders.ACCEPT)
                 .body(entityModel);
 
     }
+    @Operation(summary = "Changes some fields of a recipe by its id",
+               description = """
+    Sets the title, vegetarian, servings and instruction given, and adds the ingredients in addIngredients
+    and removes those in removeIngredients, keeping the rest of the recipe. Only the changed columns and
+    ingredients are written. Takes If-Match as the update does, returns 404 if the recipe does not exist.
+     """)
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Recipe changed",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = Recipe.class)) }),
+            @ApiResponse(responseCode = "404", description = "Recipe not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "412", description = "Recipe changed since it was read",
+                    content = @Content)
+                    })
+    @PatchMapping("/recipes/{id}")
+    ResponseEntity<EntityModel<Recipe>> patchRecipe(@RequestBody RecipePatch patch,
+                                                    @PathVariable Long id,
+                                                    @RequestHeader(HttpHeaders.IF_MATCH) Optional<String> ifMatch) {
+
+        Recipe existing = find(id).orElseThrow(() -> new RecipeNotFoundException(id));
+        if (ifMatch.isPresent() && !matches(ifMatch.get(), eTag(existing))) {
+            throw new RecipeModifiedException(id);
+        }
+        // Names are added to the dictionary for good, so only for a patch that is about to apply
+        dictionary.addAll(patch.addIngredients());
+        Recipe patchedRecipe;
+        if (writeBehind.isPresent()) {
+            Recipe patched = existing.toBuilder().build();
+            patch.applyTo(patched);
+            patchedRecipe = writeBehind.get().update(existing, patched);
+        } else {
+            long[] readVersion = new long[1];
+            try {
+                patchedRecipe = transaction.execute(status -> {
+                    // Checked again on the recipe locked for the update, which may have changed since it was found
+                    Recipe patched = repository.update(id, recipe -> {
+                        if (ifMatch.isPresent() && !matches(ifMatch.get(), eTag(recipe))) {
+                            throw new RecipeModifiedException(id);
+                        }
+                        readVersion[0] = recipe.getVersion();
+                        patch.applyTo(recipe);
+                    }).orElseThrow(() -> new RecipeNotFoundException(id));
+                    // A patch that changes nothing writes nothing
+                    if (patched.getVersion() != readVersion[0]) {
+                        changeLog.updated(patched);
+                    }
+                    return patched;
+                });
+            } catch (OptimisticLockingFailureException e) {
+                throw new RecipeModifiedException(id);
+            }
+            eventPublisher.publishEvent(new RecipeSavedEvent(patchedRecipe));
+        }
+
+        return ResponseEntity.ok()
+                .eTag(eTag(patchedRecipe))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(assembler.toModel(patchedRecipe));
+    }
+
     @Operation(summary = "Delete a recipe by its id")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Recipe removed if found")})
     @DeleteMapping("/recipes/{id}")
     void deleteRecipe(@PathVariable Long id) {
 
-        repository.deleteById(id);
+        Runnable delete = () -> transaction.executeWithoutResult(status -> {
+            repository.deleteById(id);
+            changeLog.deleted(id);
+        });
+        writeBehind.ifPresentOrElse(pending -> pending.delete(id, delete), delete);
+        eventPublisher.publishEvent(new RecipeDeletedEvent(id));
+    }
+
+    /**
+     * The recipe with its pending update, if updates are written behind.
+     */
+    private Optional<Recipe> find(Long id) {
+        return writeBehind.flatMap(pending -> pending.pending(id)).or(() -> repository.findById(id));
+    }
+
+    /**
+     * Adds the facets of the search if they were asked for, counting all matches in one more pass.
+     */
+    private CollectionModel<EntityModel<Recipe>> collection(List<EntityModel<Recipe>> recipes,
+                                                            Link self,
+                                                            Optional<Boolean> vegetarian,
+                                                            Optional<Integer> servings,
+                                                            Optional<List<String>> includesIngredients,
+                                                            Optional<List<String>> excludesIngredients,
+                                                            Optional<List<String>> instructionKeywords,
+                                                            Optional<Integer> facets) {
+        if (facets.isEmpty()) {
+            return CollectionModel.of(recipes, self);
+        }
+        return new FacetedRecipeModel(recipes, self, repository.findFacets(vegetarian,
+                                                                            servings,
+                                                                            includesIngredients,
+                                                                            excludesIngredients,
+                                                                            instructionKeywords,
+                                                                            Math.max(0, facets.get())));
+    }
+
+    private static Set<RecipeField> projection(Optional<List<String>> fields) {
+        try {
+            return RecipeField.of(fields.orElse(List.of()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidFieldException(e.getMessage());
+        }
+    }
+
+    private static String eTag(Recipe recipe) {
+        return "\"" + recipe.getVersion() + "\"";
+    }
+
+    /**
+     * Whether an If-Match header lists the ETag, or is {@code *}. Weak ETags never match.
+     */
+    private static boolean matches(String ifMatch, String eTag) {
+        for (String candidate : ifMatch.split(",")) {
+            candidate = candidate.strip();
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
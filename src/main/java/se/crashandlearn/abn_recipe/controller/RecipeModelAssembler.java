@@ -1,25 +1,97 @@
 package se.crashandlearn.abn_recipe.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.server.RepresentationModelAssembler;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeField;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 
 
+/**
+ * With {@code recipe.links.precomputed=true} the links are not built through {@code linkTo(methodOn(...))}
+ * for every recipe. Their paths are resolved once when the assembler is created, and only the base URI
+ * of the current request and the recipe id are filled in.
+ */
 @Component
 public
 class RecipeModelAssembler implements RepresentationModelAssembler<Recipe, EntityModel<Recipe>> {
 
+    private static final String BASE_URI_ATTRIBUTE = RecipeModelAssembler.class.getName() + ".baseUri";
+
+    private final String recipePathPrefix;
+    private final String recipePathSuffix;
+    private final String recipesPath;
+
+    @Value("${recipe.links.precomputed:false}")
+    private boolean precomputedLinks;
+
+    @Autowired
+    private Optional<RenderedRecipeCache> renderedCache = Optional.empty();
+
+    public RecipeModelAssembler() {
+        String recipePath = path(linkTo(methodOn(RecipeController.class).getRecipeById(null, null)).withSelfRel().getHref());
+        int id = recipePath.indexOf("{id}");
+        this.recipePathPrefix = recipePath.substring(0, id);
+        this.recipePathSuffix = recipePath.substring(id + "{id}".length());
+        this.recipesPath = path(linkTo(methodOn(RecipeController.class).find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty())).withRel("recipes").expand().getHref());
+    }
+
     @Override
     public EntityModel<Recipe> toModel(Recipe recipe) {
+        if (!precomputedLinks) {
+            return EntityModel.of(recipe, //
+                    linkTo(methodOn(RecipeController.class).getRecipeById(recipe.getId(), null)).withSelfRel(),
+                    linkTo(methodOn(RecipeController.class).find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty())).withRel("recipes").expand());
+        }
+
+        String baseUri = baseUri();
+        List<Link> links = List.of(
+                Link.of(baseUri + recipePathPrefix + recipe.getId() + recipePathSuffix),
+                Link.of(baseUri + recipesPath, "recipes"));
+        return renderedCache
+                .<EntityModel<Recipe>>map(cache -> new RenderedRecipeModel(recipe, links, cache, baseUri))
+                .orElseGet(() -> EntityModel.of(recipe, links));
+    }
+
+    /**
+     * A model writing only the given fields of the recipe, or all of them if every field is given.
+     */
+    public EntityModel<Recipe> toModel(Recipe recipe, Set<RecipeField> fields) {
+        EntityModel<Recipe> model = toModel(recipe);
+        return fields.containsAll(RecipeField.ALL) ? model : new ProjectedRecipeModel(recipe, model.getLinks(), fields);
+    }
+
+    private static String path(String href) {
+        String baseUri = baseUri();
+        return href.startsWith(baseUri) ? href.substring(baseUri.length()) : href;
+    }
 
-        return EntityModel.of(recipe, //
-                linkTo(methodOn(RecipeController.class).getRecipeById(recipe.getId())).withSelfRel(),
-                linkTo(methodOn(RecipeController.class).find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty())).withRel("recipes").expand());
+    /**
+     * The base URI is the same for every recipe of a response, so it is resolved once per request.
+     */
+    private static String baseUri() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return "";
+        }
+        String baseUri = (String) attributes.getAttribute(BASE_URI_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (baseUri == null) {
+            baseUri = ServletUriComponentsBuilder.fromCurrentServletMapping().toUriString();
+            attributes.setAttribute(BASE_URI_ATTRIBUTE, baseUri, RequestAttributes.SCOPE_REQUEST);
+        }
+        return baseUri;
     }
 }
@@ -0,0 +1,80 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON of recently returned recipes, including their links, so unchanged recipes are not serialized again.
+ * <p>
+ * A recipe can be rendered differently per base URI and per object mapper (HAL or plain JSON), so each
+ * variant is kept separately. Entries are dropped when the recipe is saved or deleted, and a rendering
+ * is only reused for a recipe with the same version, as every change takes the next version.
+ */
+@Component
+@ConditionalOnProperty(name = "recipe.links.cache-rendered", havingValue = "true")
+class RenderedRecipeCache {
+
+    interface Renderer {
+        String render() throws IOException;
+    }
+
+    private record Variant(String baseUri, ObjectMapper mapper) {
+    }
+
+    private record Rendered(long version, String json) {
+    }
+
+    private final Cache<Long, Map<Variant, Rendered>> cache;
+
+    RenderedRecipeCache(@Value("${recipe.links.rendered-cache-size:10000}") long maximumSize, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "renderedRecipes");
+    }
+
+    String get(Recipe recipe, String baseUri, ObjectMapper mapper, Renderer renderer) throws IOException {
+        if (recipe.getId() == null) {
+            return renderer.render();
+        }
+        Variant variant = new Variant(baseUri, mapper);
+        Map<Variant, Rendered> variants = cache.get(recipe.getId(), id -> new ConcurrentHashMap<>());
+        Rendered rendered = variants.get(variant);
+        if (rendered == null || rendered.version() != recipe.getVersion()) {
+            rendered = new Rendered(recipe.getVersion(), renderer.render());
+            variants.put(variant, rendered);
+        }
+        return rendered.json();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeSaved(RecipeSavedEvent event) {
+        cache.invalidate(event.recipe().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeDeleted(RecipeDeletedEvent event) {
+        cache.invalidate(event.id());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipesImported(RecipesImportedEvent event) {
+        cache.invalidateAll(event.recipes().stream().map(Recipe::getId).toList());
+    }
+}
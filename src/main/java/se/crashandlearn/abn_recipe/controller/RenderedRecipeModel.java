@@ -0,0 +1,46 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.io.IOException;
+
+/**
+ * Recipe model written from the JSON cached in {@link RenderedRecipeCache}, rendering it on a miss.
+ * Other formats than JSON are serialized as usual.
+ */
+@JsonSerialize(using = RenderedRecipeModel.Serializer.class)
+class RenderedRecipeModel extends EntityModel<Recipe> {
+
+    private final RenderedRecipeCache cache;
+    private final String baseUri;
+
+    RenderedRecipeModel(Recipe recipe, Iterable<Link> links, RenderedRecipeCache cache, String baseUri) {
+        super(recipe, links);
+        this.cache = cache;
+        this.baseUri = baseUri;
+    }
+
+    static class Serializer extends JsonSerializer<RenderedRecipeModel> {
+
+        @Override
+        public void serialize(RenderedRecipeModel model, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            ObjectMapper mapper = (ObjectMapper) generator.getCodec();
+            if (!JsonFactory.FORMAT_NAME_JSON.equals(mapper.getFactory().getFormatName())) {
+                // Binary formats cannot embed the cached JSON
+                generator.writeObject(EntityModel.of(model.getContent(), model.getLinks()));
+                return;
+            }
+            String json = model.cache.get(model.getContent(), model.baseUri, mapper,
+                    () -> mapper.writeValueAsString(EntityModel.of(model.getContent(), model.getLinks())));
+            generator.writeRawValue(json);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package se.crashandlearn.abn_recipe.event;
+
+import se.crashandlearn.abn_recipe.model.RecipeChange;
+
+/**
+ * Published after a change has been committed, in the order of the change log.
+ */
+public record RecipeChangedEvent(RecipeChange change) {
+}
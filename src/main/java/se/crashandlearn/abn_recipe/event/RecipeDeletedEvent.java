@@ -0,0 +1,7 @@
+package se.crashandlearn.abn_recipe.event;
+
+/**
+ * Published after a recipe has been removed.
+ */
+public record RecipeDeletedEvent(Long id) {
+}
@@ -0,0 +1,9 @@
+package se.crashandlearn.abn_recipe.event;
+
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+/**
+ * Published after a recipe has been created or updated.
+ */
+public record RecipeSavedEvent(Recipe recipe) {
+}
@@ -0,0 +1,11 @@
+package se.crashandlearn.abn_recipe.event;
+
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.util.List;
+
+/**
+ * Published after a chunk of a bulk import has been created or updated.
+ */
+public record RecipesImportedEvent(List<Recipe> recipes) {
+}
@@ -0,0 +1,7 @@
+package se.crashandlearn.abn_recipe.exception;
+
+public class InvalidFieldException extends RuntimeException {
+    public InvalidFieldException(String message) {
+        super(message);
+    }
+}
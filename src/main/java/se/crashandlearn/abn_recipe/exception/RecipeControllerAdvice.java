@@ -16,4 +16,18 @@ class RecipeControllerAdvice {
     String recipeNotFoundHandler(RecipeNotFoundException ex) {
         return ex.getMessage();
     }
+
+    @ResponseBody
+    @ExceptionHandler(RecipeModifiedException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    String recipeModifiedHandler(RecipeModifiedException ex) {
+        return ex.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(InvalidFieldException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String invalidFieldHandler(InvalidFieldException ex) {
+        return ex.getMessage();
+    }
 }
@@ -0,0 +1,7 @@
+package se.crashandlearn.abn_recipe.exception;
+
+public class RecipeModifiedException extends RuntimeException {
+    public RecipeModifiedException(Long id) {
+        super("Recipe " + id + " has been modified");
+    }
+}
@@ -0,0 +1,271 @@
+package se.crashandlearn.abn_recipe.index;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+import se.crashandlearn.abn_recipe.ingredient.IngredientNormalizer;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over the filterable recipe attributes, answering everything in
+ * {@code findFiltered} except the instruction keywords with bitmap operations.
+ * Holds one compressed bitmap of recipe ids per ingredient, per servings value and
+ * for vegetarian dishes. Rebuilt from the database on startup and kept up to date
+ * through the recipe events published by the controller. Ingredients are also listed
+ * by their {@link IngredientNormalizer normal form}, so a filter takes the union of
+ * the bitmaps of all variants of an ingredient. The servings and ingredients each recipe
+ * was indexed with are kept as well, so an update or delete only touches its own bitmaps.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "recipe.index.ingredients.enabled", havingValue = "true")
+public class RecipeIngredientIndex implements SmartInitializingSingleton {
+
+    private final Map<String, Roaring64NavigableMap> ingredients = new HashMap<>();
+    private final NavigableMap<Integer, Roaring64NavigableMap> servings = new TreeMap<>();
+    private final Roaring64NavigableMap vegetarian = new Roaring64NavigableMap();
+    private final Map<String, Set<String>> variants = new HashMap<>();
+    private final Map<Long, Indexed> recipes = new HashMap<>();
+
+    private final IngredientNormalizer normalizer;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    public RecipeIngredientIndex(IngredientNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Returns the ids of all recipes fulfilling the given filters, in ascending order.
+     */
+    public Roaring64NavigableMap match(Optional<Boolean> vegetarian,
+                                       Optional<Integer> servings,
+                                       Optional<List<String>> includeIngredients,
+                                       Optional<List<String>> excludeIngredients) {
+        lock.readLock().lock();
+        try {
+            Roaring64NavigableMap result = new Roaring64NavigableMap();
+            this.servings.tailMap(servings.orElse(0), true).values().forEach(result::or);
+
+            vegetarian.ifPresent(veg -> {
+                if (veg) {
+                    result.and(this.vegetarian);
+                } else {
+                    result.andNot(this.vegetarian);
+                }
+            });
+
+            includeIngredients.ifPresent(_ingredients -> _ingredients.forEach(ingredient -> {
+                Roaring64NavigableMap recipes = new Roaring64NavigableMap();
+                variants(ingredient).forEach(variant -> recipes.or(this.ingredients.get(variant)));
+                result.and(recipes);
+            }));
+
+            excludeIngredients.ifPresent(_ingredients -> _ingredients.forEach(ingredient ->
+                    variants(ingredient).forEach(variant -> result.andNot(this.ingredients.get(variant)))));
+
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the given recipes by vegetarian, servings and ingredient in one pass over them, from the
+     * servings and ingredients each was indexed with, instead of reading any recipe. The cost grows with
+     * the number of matches, not with the number of ingredients in the index.
+     */
+    public RecipeFacets facets(Roaring64NavigableMap matches, int topIngredients) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Long> servingCounts = new HashMap<>();
+            Map<String, Long> ingredientCounts = new HashMap<>();
+            matches.forEach(id -> {
+                Indexed indexed = recipes.get(id);
+                if (indexed == null) {
+                    return;
+                }
+                servingCounts.merge(indexed.servings(), 1L, Long::sum);
+                indexed.ingredients().forEach(ingredient -> ingredientCounts.merge(ingredient, 1L, Long::sum));
+            });
+            return RecipeFacets.of(intersection(matches, vegetarian), servingCounts, ingredientCounts, topIngredients);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Recipe recipe) {
+        putAll(List.of(recipe));
+    }
+
+    public void putAll(List<Recipe> recipes) {
+        lock.writeLock().lock();
+        try {
+            for (Recipe recipe : recipes) {
+                unindex(recipe.getId());
+                add(recipe.getId(), recipe.isVegetarian(), recipe.getServings());
+                if (recipe.getIngredients() != null) {
+                    recipe.getIngredients().forEach(ingredient -> add(recipe.getId(), ingredient));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeSaved(RecipeSavedEvent event) {
+        put(event.recipe());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeDeleted(RecipeDeletedEvent event) {
+        remove(event.id());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipesImported(RecipesImportedEvent event) {
+        putAll(event.recipes());
+    }
+
+    /**
+     * Runs before the web server accepts requests, so no filter is answered by a half built index.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            vegetarian.clear();
+            servings.clear();
+            ingredients.clear();
+            variants.clear();
+            recipes.clear();
+
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> {
+                entityManager.createQuery("select r.id, r.vegetarian, r.servings from Recipe r", Object[].class)
+                        .getResultStream()
+                        .forEach(row -> add((Long) row[0], (Boolean) row[1], (Integer) row[2]));
+                entityManager.createQuery("select r.id, i from Recipe r join r.ingredients i", Object[].class)
+                        .getResultStream()
+                        .forEach(row -> add((Long) row[0], (String) row[1]));
+            });
+
+            log.info("Indexed {} ingredients", ingredients.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(long id, boolean isVegetarian, int servingCount) {
+        if (isVegetarian) {
+            vegetarian.addLong(id);
+        }
+        servings.computeIfAbsent(servingCount, key -> new Roaring64NavigableMap()).addLong(id);
+        recipes.put(id, new Indexed(servingCount, new HashSet<>()));
+    }
+
+    private void add(long id, String ingredient) {
+        ingredients.computeIfAbsent(ingredient, key -> {
+            variants.computeIfAbsent(normalizer.normalize(key), form -> new HashSet<>()).add(key);
+            return new Roaring64NavigableMap();
+        }).addLong(id);
+        recipes.get(id).ingredients().add(ingredient);
+    }
+
+    private void unindex(long id) {
+        Indexed indexed = recipes.remove(id);
+        if (indexed == null) {
+            return;
+        }
+        vegetarian.removeLong(id);
+        removeFrom(servings, indexed.servings(), id);
+        for (String ingredient : indexed.ingredients()) {
+            if (removeFrom(ingredients, ingredient, id)) {
+                String form = normalizer.normalize(ingredient);
+                Set<String> names = variants.get(form);
+                names.remove(ingredient);
+                if (names.isEmpty()) {
+                    variants.remove(form);
+                }
+            }
+        }
+    }
+
+    private Set<String> variants(String ingredient) {
+        return variants.getOrDefault(normalizer.normalize(ingredient), Set.of());
+    }
+
+    /**
+     * The 64 bit bitmap has no intersection count, so the smaller bitmap is copied and intersected.
+     */
+    private static long intersection(Roaring64NavigableMap left, Roaring64NavigableMap right) {
+        boolean leftSmaller = left.getLongCardinality() < right.getLongCardinality();
+        Roaring64NavigableMap both = new Roaring64NavigableMap();
+        both.or(leftSmaller ? left : right);
+        both.and(leftSmaller ? right : left);
+        return both.getLongCardinality();
+    }
+
+    /**
+     * Returns whether the bitmap became empty and was dropped.
+     */
+    private static <K> boolean removeFrom(Map<K, Roaring64NavigableMap> bitmaps, K key, long id) {
+        Roaring64NavigableMap recipes = bitmaps.get(key);
+        recipes.removeLong(id);
+        if (recipes.isEmpty()) {
+            bitmaps.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The servings and ingredients a recipe is listed under.
+     */
+    private record Indexed(int servings, Set<String> ingredients) {
+    }
+}
@@ -0,0 +1,28 @@
+package se.crashandlearn.abn_recipe.ingredient;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores ingredient names as their id in the {@link IngredientDictionary}, and reads them back as
+ * the dictionary's name instance. Created by Spring through Hibernate's bean container.
+ */
+@Converter
+public class IngredientConverter implements AttributeConverter<String, Integer> {
+
+    private final IngredientDictionary dictionary;
+
+    public IngredientConverter(IngredientDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String name) {
+        return name == null ? null : dictionary.id(name);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return id == null ? null : dictionary.name(id);
+    }
+}
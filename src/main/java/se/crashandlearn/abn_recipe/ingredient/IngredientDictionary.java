@@ -0,0 +1,190 @@
+package se.crashandlearn.abn_recipe.ingredient;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+import se.crashandlearn.abn_recipe.model.Ingredient;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory copy of the {@link Ingredient} table in both directions, loaded on first use. Recipes store
+ * ingredient ids, and every loaded recipe refers to the one name instance held here.
+ * <p>
+ * Names seen for the first time are added to the table right away, on a connection of their own, so an
+ * id never refers to a name that was rolled back with the recipe that introduced it. Writers add the
+ * ingredients of a recipe with {@link #addAll} before their transaction, so a flush does not wait for a
+ * second connection while holding one. Additions take a lock rather than a monitor, which would pin a
+ * virtual thread for the round trip.
+ * <p>
+ * Every name is also filed under its {@link IngredientNormalizer normal form} when it is added, so the
+ * variants of an ingredient to filter on are one lookup.
+ */
+@Component
+public class IngredientDictionary {
+
+    private final DataSource dataSource;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> variants = new ConcurrentHashMap<>();
+
+    private final IngredientNormalizer normalizer;
+
+    private final Lock lock = new ReentrantLock();
+
+    private volatile boolean loaded;
+
+    IngredientDictionary(DataSource dataSource, IngredientNormalizer normalizer) {
+        this.dataSource = dataSource;
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Returns the id of the ingredient, without adding it.
+     */
+    public Optional<Integer> find(String name) {
+        load();
+        return Optional.ofNullable(ids.get(Ingredient.canonical(name)));
+    }
+
+    /**
+     * Returns the names in the dictionary with the same normal form as the given one, e.g. "potato" and
+     * "potatoes" for "Potatoes", or nothing if there are none.
+     */
+    public List<String> variants(String name) {
+        load();
+        return variants.getOrDefault(normalizer.normalize(name), Set.of()).stream().sorted().toList();
+    }
+
+    /**
+     * Returns the id of the ingredient, adding it to the dictionary if it is new.
+     */
+    public int id(String name) {
+        load();
+        String canonical = Ingredient.canonical(name);
+        Integer id = ids.get(canonical);
+        return id != null ? id : insert(canonical);
+    }
+
+    /**
+     * Adds the ingredients that are new, so saving recipes with them does not need to. Takes no
+     * ingredients as null.
+     */
+    public void addAll(Collection<String> names) {
+        if (names != null) {
+            names.forEach(this::id);
+        }
+    }
+
+    public String name(int id) {
+        load();
+        String name = names.get(id);
+        return name != null ? name : select(id);
+    }
+
+    public int size() {
+        load();
+        return ids.size();
+    }
+
+    private int insert(String name) {
+        lock.lock();
+        try {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = insertRow(name);
+                add(id, name);
+            }
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int insertRow(String name) {
+        int id;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            try (PreparedStatement insert = connection.prepareStatement("insert into ingredient (name) values (?)", new String[]{"id"})) {
+                insert.setString(1, name);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    id = keys.getInt(1);
+                }
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // Added by another instance since the dictionary was loaded
+                try (PreparedStatement select = connection.prepareStatement("select id from ingredient where name = ?")) {
+                    select.setString(1, name);
+                    try (ResultSet rows = select.executeQuery()) {
+                        rows.next();
+                        id = rows.getInt(1);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not add ingredient " + name, e);
+        }
+        return id;
+    }
+
+    private String select(int id) {
+        lock.lock();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement("select name from ingredient where id = ?")) {
+            select.setInt(1, id);
+            try (ResultSet rows = select.executeQuery()) {
+                if (!rows.next()) {
+                    throw new IllegalStateException("Unknown ingredient " + id);
+                }
+                return add(id, rows.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not read ingredient " + id, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("select id, name from ingredient")) {
+                while (rows.next()) {
+                    add(rows.getInt(1), rows.getString(2));
+                }
+            } catch (SQLException e) {
+                throw new DataAccessResourceFailureException("Could not load the ingredient dictionary", e);
+            }
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String add(int id, String name) {
+        String existing = names.putIfAbsent(id, name);
+        ids.putIfAbsent(name, id);
+        variants.computeIfAbsent(normalizer.normalize(name), key -> ConcurrentHashMap.newKeySet()).add(name);
+        return existing != null ? existing : name;
+    }
+}
@@ -0,0 +1,63 @@
+package se.crashandlearn.abn_recipe.ingredient;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.crashandlearn.abn_recipe.model.Ingredient;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces ingredient names to the form compared by ingredient filters: the canonical name with its last
+ * word stripped of plural endings, replaced by its synonym if {@code recipe.ingredients.synonyms} has one.
+ * So "Potatoes" matches "potato", and with {@code aubergine=eggplant} "Aubergines" matches "eggplant".
+ * <p>
+ * The normal form only needs to be the same for the singular and the plural, it is not always a word:
+ * "cookies" and "cookie" both become "cooky". Synonyms are given as groups of names separated by
+ * {@code =}, each group normalized to its first name.
+ */
+@Component
+public class IngredientNormalizer {
+
+    private static final List<String> ES_PLURALS = List.of("oes", "ches", "shes", "sses", "xes", "zes");
+
+    private final Map<String, String> synonyms = new HashMap<>();
+
+    public IngredientNormalizer(@Value("${recipe.ingredients.synonyms:}") List<String> synonyms) {
+        for (String group : synonyms) {
+            if (group.isBlank()) {
+                continue;
+            }
+            String[] names = group.split("=");
+            String preferred = singular(Ingredient.canonical(names[0]));
+            for (String name : names) {
+                this.synonyms.put(singular(Ingredient.canonical(name)), preferred);
+            }
+        }
+    }
+
+    public String normalize(String name) {
+        String singular = singular(Ingredient.canonical(name));
+        return synonyms.getOrDefault(singular, singular);
+    }
+
+    private static String singular(String name) {
+        int lastWord = name.lastIndexOf(' ') + 1;
+        String word = name.substring(lastWord);
+        if (word.length() <= 3) {
+            // Not a plural of a shorter word
+        } else if (word.endsWith("ies")) {
+            word = word.substring(0, word.length() - 1);
+        } else if (ES_PLURALS.stream().anyMatch(word::endsWith)) {
+            word = word.substring(0, word.length() - 2);
+        } else if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")) {
+            word = word.substring(0, word.length() - 1);
+        }
+        // "pies" and "pie" as well as "berries" and "berry"
+        if (word.endsWith("ie")) {
+            word = word.substring(0, word.length() - 2) + "y";
+        }
+        return name.substring(0, lastWord) + word;
+    }
+}
@@ -0,0 +1,79 @@
+package se.crashandlearn.abn_recipe.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Which of the five recipe filters a search uses, and how many ingredients and keywords it has,
+ * without the values themselves. Term counts above {@value #MAX_TERMS} are tagged together so the
+ * number of time series stays bounded.
+ * <p>
+ * There are 256 shapes, so meters tagged with one publish the few fixed buckets below rather than a
+ * percentile histogram, which has about 70 buckets for each combination of tags.
+ */
+public record FilterShape(boolean vegetarian, boolean servings, int includes, int excludes, int keywords) {
+
+    public static final FilterShape NONE = new FilterShape(false, false, 0, 0, 0);
+
+    public static final Duration[] LATENCY_BUCKETS = Stream.of(5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000)
+            .map(Duration::ofMillis)
+            .toArray(Duration[]::new);
+
+    public static final double[] COUNT_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 1000, 10000};
+
+    private static final int MAX_TERMS = 3;
+
+    public static FilterShape of(Optional<Boolean> vegetarian,
+                                 Optional<Integer> servings,
+                                 Optional<List<String>> includeIngredients,
+                                 Optional<List<String>> excludeIngredients,
+                                 Optional<List<String>> instructionKeywords) {
+        return new FilterShape(vegetarian.isPresent(),
+                servings.isPresent(),
+                includeIngredients.map(List::size).orElse(0),
+                excludeIngredients.map(List::size).orElse(0),
+                instructionKeywords.map(List::size).orElse(0));
+    }
+
+    /**
+     * Reads the shape from the request parameters of {@code GET /recipes}. List parameters may be
+     * repeated or comma separated, as Spring binds both.
+     */
+    public static FilterShape of(HttpServletRequest request) {
+        return new FilterShape(request.getParameter("vegetarian") != null,
+                request.getParameter("servings") != null,
+                terms(request, "includesIngredients"),
+                terms(request, "excludesIngredients"),
+                terms(request, "instructionKeywords"));
+    }
+
+    public Tags tags() {
+        return Tags.of(
+                "filter.vegetarian", String.valueOf(vegetarian),
+                "filter.servings", String.valueOf(servings),
+                "filter.includes", count(includes),
+                "filter.excludes", count(excludes),
+                "filter.keywords", count(keywords));
+    }
+
+    private static int terms(HttpServletRequest request, String parameter) {
+        String[] values = request.getParameterValues(parameter);
+        if (values == null) {
+            return 0;
+        }
+        return (int) Arrays.stream(values)
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .filter(term -> !term.isBlank())
+                .count();
+    }
+
+    private static String count(int terms) {
+        return terms > MAX_TERMS ? MAX_TERMS + "+" : String.valueOf(terms);
+    }
+}
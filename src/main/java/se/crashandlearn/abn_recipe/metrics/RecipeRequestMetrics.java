@@ -0,0 +1,96 @@
+package se.crashandlearn.abn_recipe.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import se.crashandlearn.abn_recipe.controller.RecipeController;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every {@link RecipeController} method as {@code recipe.requests}, tagged with the handler and the
+ * status, and records the number of SQL statements it ran as {@code recipe.requests.statements}.
+ * Searches, {@code GET /recipes}, are also tagged with their {@link FilterShape}.
+ * <p>
+ * Streamed responses read the database after the handler has returned, on another thread, so their
+ * statements are not counted.
+ */
+@Component
+public class RecipeRequestMetrics implements AsyncHandlerInterceptor, WebMvcConfigurer {
+
+    private static final String START_ATTRIBUTE = RecipeRequestMetrics.class.getName() + ".start";
+
+    private final MeterRegistry meterRegistry;
+
+    private final SqlStatementCounter statementCounter;
+
+    RecipeRequestMetrics(MeterRegistry meterRegistry, SqlStatementCounter statementCounter) {
+        this.meterRegistry = meterRegistry;
+        this.statementCounter = statementCounter;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/recipes", "/recipes/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (recipeHandler(handler) && request.getAttribute(START_ATTRIBUTE) == null) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+            statementCounter.start();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        statementCounter.stop();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Long start = (Long) request.getAttribute(START_ATTRIBUTE);
+        if (start == null || !recipeHandler(handler)) {
+            return;
+        }
+        request.removeAttribute(START_ATTRIBUTE);
+        Tags tags = Tags.of(
+                "handler", ((HandlerMethod) handler).getMethod().getName(),
+                "status", String.valueOf(response.getStatus()));
+        if (search(request)) {
+            tags = tags.and(FilterShape.of(request).tags());
+        }
+
+        Timer.builder("recipe.requests")
+                .description("Recipe API requests by handler and filter shape")
+                .tags(tags)
+                .serviceLevelObjectives(FilterShape.LATENCY_BUCKETS)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("recipe.requests.statements")
+                .description("SQL statements per recipe API request")
+                .tags(tags)
+                .serviceLevelObjectives(FilterShape.COUNT_BUCKETS)
+                .register(meterRegistry)
+                .record(statementCounter.stop());
+    }
+
+    private static boolean search(HttpServletRequest request) {
+        return "GET".equals(request.getMethod())
+                && "/recipes".equals(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+    }
+
+    private static boolean recipeHandler(Object handler) {
+        return handler instanceof HandlerMethod method && method.getBeanType() == RecipeController.class;
+    }
+}
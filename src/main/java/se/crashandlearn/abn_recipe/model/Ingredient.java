@@ -0,0 +1,48 @@
+package se.crashandlearn.abn_recipe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Entry of the ingredient dictionary. Every distinct ingredient name is stored once, recipes refer to it
+ * by id. Names are kept in canonical form, see {@link #canonical(String)}.
+ */
+@Entity
+@Table(name="ingredient")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Ingredient {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, unique = true)
+    private String name;
+
+    /**
+     * Returns the name in lower case, without leading and trailing whitespace and with every other run
+     * of whitespace replaced by a single space, so " Olive  Oil" and "olive oil" are the same ingredient.
+     */
+    public static String canonical(String name) {
+        return WHITESPACE.matcher(name.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public static List<String> canonical(List<String> names) {
+        return names.stream().filter(Objects::nonNull).map(Ingredient::canonical).toList();
+    }
+
+    public static Set<String> canonical(Set<String> names) {
+        Set<String> canonical = new HashSet<>();
+        names.stream().filter(Objects::nonNull).map(Ingredient::canonical).forEach(canonical::add);
+        return canonical;
+    }
+}
@@ -1,25 +1,40 @@
 package se.crashandlearn.abn_recipe.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import se.crashandlearn.abn_recipe.ingredient.IngredientConverter;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
+// Updates only write the columns that changed, so an unchanged instruction is not rewritten
 @Entity
 @Table(name="recipe")
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Recipe {
 
 
+    // A pooled sequence lets Hibernate batch inserts, which an identity column does not. With shards,
+    // the ids of a shard are drawn from the sequence of the catalog database
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "recipe_seq")
+    @GenericGenerator(name = "recipe_seq", strategy = "se.crashandlearn.abn_recipe.shard.ShardedIdGenerator", parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "recipe_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")})
     private Long id;
 
     private String title;
@@ -27,12 +42,34 @@ public class Recipe {
 
     private int servings;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(name="ingredient", joinColumns=@JoinColumn(name="recipe_id"))
-    @Column(name="ingredient")
+    // Stored as ids in the ingredient dictionary, names are in canonical form so case variants are one ingredient
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name="recipe_ingredient", joinColumns=@JoinColumn(name="recipe_id"))
+    @Column(name="ingredient_id")
+    @Convert(converter = IngredientConverter.class)
     private Set<String> ingredients =  new HashSet<>();
 
     @Lob
     private String instruction;
 
+    // Incremented on every change, updates carrying an older version fail. Primitive, so that a recipe
+    // with an id is still merged, not inserted
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
+
+    @UpdateTimestamp
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant lastModified;
+
+    public void setIngredients(Set<String> ingredients) {
+        this.ingredients = ingredients == null ? null : Ingredient.canonical(ingredients);
+    }
+
+    public static class RecipeBuilder {
+        public RecipeBuilder ingredients(Set<String> ingredients) {
+            this.ingredients = ingredients == null ? null : Ingredient.canonical(ingredients);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package se.crashandlearn.abn_recipe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entry of the change log: a recipe was created, updated or deleted. Entries are numbered in increasing
+ * order and become visible in that order, so a reader that has seen an entry has seen all before it.
+ */
+@Entity
+@Table(name="recipe_change")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipeChange {
+
+    public enum Operation {
+        CREATED, UPDATED, DELETED
+    }
+
+    @Id
+    private long seq;
+
+    @Column(nullable = false)
+    private long recipeId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Operation operation;
+
+    // The version of the recipe after the change, none for deletes
+    private Long version;
+
+    @Column(nullable = false)
+    private Instant changedAt;
+}
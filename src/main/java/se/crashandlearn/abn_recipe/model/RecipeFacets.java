@@ -0,0 +1,50 @@
+package se.crashandlearn.abn_recipe.model;
+
+import java.util.*;
+
+/**
+ * Counts of the recipes matching a search: all of them, the vegetarian ones, those per number of
+ * servings, and those with each of the most common ingredients, most common first.
+ */
+public record RecipeFacets(long count,
+                           long vegetarian,
+                           SortedMap<Integer, Long> servings,
+                           List<IngredientCount> ingredients) {
+
+    public record IngredientCount(String ingredient, long count) {
+    }
+
+    private static final Comparator<IngredientCount> MOST_COMMON = Comparator.comparingLong(IngredientCount::count).reversed()
+            .thenComparing(IngredientCount::ingredient);
+
+    /**
+     * Every recipe has a number of servings, so the total is the sum of the servings counts.
+     */
+    public static RecipeFacets of(long vegetarian, Map<Integer, Long> servings, Map<String, Long> ingredients, int topIngredients) {
+        return new RecipeFacets(
+                servings.values().stream().mapToLong(Long::longValue).sum(),
+                vegetarian,
+                new TreeMap<>(servings),
+                ingredients.entrySet().stream()
+                        .map(entry -> new IngredientCount(entry.getKey(), entry.getValue()))
+                        .sorted(MOST_COMMON)
+                        .limit(topIngredients)
+                        .toList());
+    }
+
+    /**
+     * Adds up facets counted over disjoint sets of recipes. Each should list all of its ingredients,
+     * or the top ones of the sum may be missing.
+     */
+    public static RecipeFacets sum(Collection<RecipeFacets> facets, int topIngredients) {
+        long vegetarian = 0;
+        Map<Integer, Long> servings = new HashMap<>();
+        Map<String, Long> ingredients = new HashMap<>();
+        for (RecipeFacets part : facets) {
+            vegetarian += part.vegetarian();
+            part.servings().forEach((count, recipes) -> servings.merge(count, recipes, Long::sum));
+            part.ingredients().forEach(ingredient -> ingredients.merge(ingredient.ingredient(), ingredient.count(), Long::sum));
+        }
+        return of(vegetarian, servings, ingredients, topIngredients);
+    }
+}
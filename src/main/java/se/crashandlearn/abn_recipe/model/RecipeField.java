@@ -0,0 +1,59 @@
+package se.crashandlearn.abn_recipe.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The attributes of a {@link Recipe} a search can be limited to, named as in its JSON and in the entity.
+ * The id is always read, as links and pages are built from it.
+ */
+public enum RecipeField {
+    ID("id"),
+    TITLE("title"),
+    VEGETARIAN("vegetarian"),
+    SERVINGS("servings"),
+    INGREDIENTS("ingredients"),
+    INSTRUCTION("instruction"),
+    VERSION("version"),
+    LAST_MODIFIED("lastModified");
+
+    public static final Set<RecipeField> ALL = Collections.unmodifiableSet(EnumSet.allOf(RecipeField.class));
+
+    private final String attribute;
+
+    RecipeField(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String attribute() {
+        return attribute;
+    }
+
+    public static Optional<RecipeField> of(String attribute) {
+        for (RecipeField field : values()) {
+            if (field.attribute.equals(attribute)) {
+                return Optional.of(field);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The fields named, with the id. Returns all fields if none are named.
+     *
+     * @throws IllegalArgumentException if a name is not a field
+     */
+    public static Set<RecipeField> of(Collection<String> attributes) {
+        if (attributes.isEmpty()) {
+            return ALL;
+        }
+        Set<RecipeField> fields = EnumSet.of(ID);
+        for (String attribute : attributes) {
+            fields.add(of(attribute.strip()).orElseThrow(() -> new IllegalArgumentException("Unknown recipe field " + attribute)));
+        }
+        return fields;
+    }
+}
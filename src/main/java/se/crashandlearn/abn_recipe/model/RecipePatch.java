@@ -0,0 +1,43 @@
+package se.crashandlearn.abn_recipe.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A partial update of a {@link Recipe}. Fields that are given replace those of the recipe, the others
+ * are kept. Ingredients are removed and added by name, in any case.
+ */
+public record RecipePatch(String title,
+                          Boolean vegetarian,
+                          Integer servings,
+                          String instruction,
+                          Set<String> addIngredients,
+                          Set<String> removeIngredients) {
+
+    /**
+     * Changes the recipe in place, so that only the changed columns and ingredient rows are written.
+     */
+    public void applyTo(Recipe recipe) {
+        if (title != null) {
+            recipe.setTitle(title);
+        }
+        if (vegetarian != null) {
+            recipe.setVegetarian(vegetarian);
+        }
+        if (servings != null) {
+            recipe.setServings(servings);
+        }
+        if (instruction != null) {
+            recipe.setInstruction(instruction);
+        }
+        if (removeIngredients != null && recipe.getIngredients() != null) {
+            recipe.getIngredients().removeAll(Ingredient.canonical(removeIngredients));
+        }
+        if (addIngredients != null) {
+            if (recipe.getIngredients() == null) {
+                recipe.setIngredients(new HashSet<>());
+            }
+            recipe.getIngredients().addAll(Ingredient.canonical(addIngredients));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package se.crashandlearn.abn_recipe.model;
+
+/**
+ * The columns of a {@link Recipe} that can be read without touching the ingredient or instruction storage.
+ */
+public record RecipeSummary(Long id, String title, boolean vegetarian, int servings) {
+}
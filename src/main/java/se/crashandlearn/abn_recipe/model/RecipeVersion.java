@@ -0,0 +1,7 @@
+package se.crashandlearn.abn_recipe.model;
+
+/**
+ * The current version of a stored {@link Recipe}.
+ */
+public record RecipeVersion(Long id, long version) {
+}
@@ -0,0 +1,40 @@
+package se.crashandlearn.abn_recipe.reactive;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.config.EnableHypermediaSupport;
+import org.springframework.hateoas.config.EnableHypermediaSupport.HypermediaType;
+import org.springframework.hateoas.support.WebStack;
+
+/**
+ * The {@code reactive} profile serves the recipe API from WebFlux on Netty, reading and writing
+ * through R2DBC.
+ * <p>
+ * Spring Boot only configures HAL for Spring MVC, picks Tomcat as it is on the classpath for the
+ * servlet stack, and leaves out the JDBC data source once there is an R2DBC connection factory.
+ * Flyway needs the data source to migrate the schema, and Hibernate to validate it and to serve the
+ * bulk import and the indexes, so it is declared here. R2DBC must connect to the same database.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+@EnableHypermediaSupport(type = HypermediaType.HAL, stacks = WebStack.WEBFLUX)
+@EnableConfigurationProperties(DataSourceProperties.class)
+class ReactiveConfiguration {
+
+    @Bean
+    NettyReactiveWebServerFactory reactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+}
@@ -0,0 +1,205 @@
+package se.crashandlearn.abn_recipe.reactive;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.exception.RecipeModifiedException;
+import se.crashandlearn.abn_recipe.exception.RecipeNotFoundException;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The {@code /recipes} API of {@link se.crashandlearn.abn_recipe.controller.RecipeController}, without
+ * blocking a thread per request. Newline delimited JSON is written as recipes are read from the
+ * database, at the pace the client reads it.
+ * <p>
+ * Recipes are conditional as they are there: their version is the ETag, answering {@code If-None-Match}
+ * and {@code If-Modified-Since} with 304, and an update with a stale {@code If-Match}, or one that
+ * conflicts with a concurrent update, is answered with 412.
+ * <p>
+ * Spring Boot only makes HAL the default representation for Spring MVC, so it is listed first here.
+ */
+@RestController
+@Profile("reactive")
+class ReactiveRecipeController {
+
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final ReactiveRecipeRepository repository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    ReactiveRecipeController(ReactiveRecipeRepository repository, ApplicationEventPublisher eventPublisher) {
+        this.repository = repository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @GetMapping(value = "/recipes", produces = {MediaTypes.HAL_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    Mono<CollectionModel<EntityModel<Recipe>>> find(
+            @RequestParam Optional<Boolean> vegetarian,
+            @RequestParam Optional<Integer> servings,
+            @RequestParam Optional<List<String>> includesIngredients,
+            @RequestParam Optional<List<String>> excludesIngredients,
+            @RequestParam Optional<List<String>> instructionKeywords,
+            ServerHttpRequest request
+    ) {
+        String baseUri = baseUri(request);
+
+        return repository.findFiltered(vegetarian, servings, includesIngredients, excludesIngredients, instructionKeywords)
+                .map(recipe -> toModel(recipe, baseUri))
+                .collectList()
+                .map(recipes -> CollectionModel.of(recipes, Link.of(request.getURI().toString())));
+    }
+
+    @GetMapping(value = "/recipes", params = "limit", produces = {MediaTypes.HAL_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    Mono<CollectionModel<EntityModel<Recipe>>> findPage(
+            @RequestParam Optional<Boolean> vegetarian,
+            @RequestParam Optional<Integer> servings,
+            @RequestParam Optional<List<String>> includesIngredients,
+            @RequestParam Optional<List<String>> excludesIngredients,
+            @RequestParam Optional<List<String>> instructionKeywords,
+            @RequestParam Integer limit,
+            @RequestParam Optional<Long> after,
+            ServerHttpRequest request
+    ) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String baseUri = baseUri(request);
+
+        return repository.findFiltered(vegetarian, servings, includesIngredients, excludesIngredients, instructionKeywords, after, pageSize)
+                .map(recipe -> toModel(recipe, baseUri))
+                .collectList()
+                .map(recipes -> {
+                    UriComponentsBuilder self = UriComponentsBuilder.fromUri(request.getURI()).replaceQueryParam("limit", pageSize);
+                    CollectionModel<EntityModel<Recipe>> page = CollectionModel.of(recipes, Link.of(self.toUriString()));
+                    if (recipes.size() == pageSize) {
+                        Long last = recipes.get(recipes.size() - 1).getContent().getId();
+                        page.add(Link.of(self.replaceQueryParam("after", last).toUriString(), IanaLinkRelations.NEXT));
+                    }
+                    return page;
+                });
+    }
+
+    @GetMapping(value = "/recipes", produces = APPLICATION_NDJSON_VALUE)
+    Flux<Recipe> stream(
+            @RequestParam Optional<Boolean> vegetarian,
+            @RequestParam Optional<Integer> servings,
+            @RequestParam Optional<List<String>> includesIngredients,
+            @RequestParam Optional<List<String>> excludesIngredients,
+            @RequestParam Optional<List<String>> instructionKeywords
+    ) {
+        return repository.findFiltered(vegetarian, servings, includesIngredients, excludesIngredients, instructionKeywords);
+    }
+
+    @PostMapping(value = "/recipes", produces = {MediaTypes.HAL_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    Mono<ResponseEntity<EntityModel<Recipe>>> newRecipe(@RequestBody Recipe newRecipe, ServerHttpRequest request) {
+
+        return repository.save(newRecipe)
+                .doOnNext(savedRecipe -> eventPublisher.publishEvent(new RecipeSavedEvent(savedRecipe)))
+                .map(savedRecipe -> created(toModel(savedRecipe, baseUri(request))));
+    }
+
+    @GetMapping(value = "/recipes/{id}", produces = {MediaTypes.HAL_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    Mono<EntityModel<Recipe>> getRecipeById(@PathVariable Long id, ServerWebExchange exchange) {
+
+        return repository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new RecipeNotFoundException(id)))
+                // Also sets the ETag and Last-Modified headers of the response
+                .filter(recipe -> recipe.getLastModified() == null
+                        ? !exchange.checkNotModified(eTag(recipe))
+                        : !exchange.checkNotModified(eTag(recipe), recipe.getLastModified()))
+                .map(recipe -> toModel(recipe, baseUri(exchange.getRequest())));
+    }
+
+    @PutMapping(value = "/recipes/{id}", produces = {MediaTypes.HAL_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    Mono<ResponseEntity<EntityModel<Recipe>>> updateRecipe(@RequestBody Recipe newRecipe,
+                                                           @PathVariable Long id,
+                                                           @RequestHeader(HttpHeaders.IF_MATCH) Optional<String> ifMatch,
+                                                           ServerHttpRequest request) {
+
+        newRecipe.setId(id);
+        return repository.findById(id)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(existing -> {
+                    if (ifMatch.isPresent() && !existing.map(recipe -> matches(ifMatch.get(), eTag(recipe))).orElse(false)) {
+                        return Mono.error(new RecipeModifiedException(id));
+                    }
+                    // Updated only at the version read, so a concurrent update in between is detected
+                    return existing
+                            .map(recipe -> repository.update(id, recipe.getVersion(), newRecipe)
+                                    .switchIfEmpty(Mono.error(() -> new RecipeModifiedException(id))))
+                            .orElseGet(() -> repository.save(newRecipe));
+                })
+                .doOnNext(updatedRecipe -> eventPublisher.publishEvent(new RecipeSavedEvent(updatedRecipe)))
+                .map(updatedRecipe -> {
+                    EntityModel<Recipe> entityModel = toModel(updatedRecipe, baseUri(request));
+                    return ResponseEntity
+                            .created(entityModel.getRequiredLink(IanaLinkRelations.SELF).toUri())
+                            .eTag(eTag(updatedRecipe))
+                            .body(entityModel);
+                });
+    }
+
+    @DeleteMapping("/recipes/{id}")
+    Mono<Void> deleteRecipe(@PathVariable Long id) {
+
+        return repository.deleteById(id)
+                .doOnSuccess(deleted -> eventPublisher.publishEvent(new RecipeDeletedEvent(id)));
+    }
+
+    private static EntityModel<Recipe> toModel(Recipe recipe, String baseUri) {
+        return EntityModel.of(recipe,
+                Link.of(baseUri + "/recipes/" + recipe.getId()),
+                Link.of(baseUri + "/recipes", "recipes"));
+    }
+
+    private static ResponseEntity<EntityModel<Recipe>> created(EntityModel<Recipe> entityModel) {
+        return ResponseEntity
+                .created(entityModel.getRequiredLink(IanaLinkRelations.SELF).toUri())
+                .body(entityModel);
+    }
+
+    private static String eTag(Recipe recipe) {
+        return "\"" + recipe.getVersion() + "\"";
+    }
+
+    /**
+     * Whether an If-Match header lists the ETag, or is {@code *}. Weak ETags never match.
+     */
+    private static boolean matches(String ifMatch, String eTag) {
+        for (String candidate : ifMatch.split(",")) {
+            candidate = candidate.strip();
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String baseUri(ServerHttpRequest request) {
+        return UriComponentsBuilder.fromUri(request.getURI())
+                .replacePath(request.getPath().contextPath().value())
+                .replaceQuery(null)
+                .build()
+                .toUriString();
+    }
+}
@@ -0,0 +1,280 @@
+package se.crashandlearn.abn_recipe.reactive;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Reads and writes recipes over R2DBC, in the tables Hibernate maps {@link Recipe} to. Filters are the
+ * ones of {@link se.crashandlearn.abn_recipe.repository.RecipeRepositoryCustom#findFiltered} written as
+ * SQL. Like there, ingredients are read with one additional query per batch of recipes.
+ * <p>
+ * Ingredient ids are resolved through the {@link IngredientDictionary}, which uses JDBC, so those
+ * lookups run on the bounded elastic scheduler.
+ * <p>
+ * The ingredient and instruction indexes and the query cache are not consulted.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveRecipeRepository {
+
+    private static final String SELECT = "select r.id, r.title, r.vegetarian, r.servings, r.instruction, r.version, r.last_modified from recipe r";
+
+    private final DatabaseClient client;
+
+    private final TransactionalOperator transactions;
+
+    private final IngredientDictionary dictionary;
+
+    private final int batchSize;
+
+    ReactiveRecipeRepository(DatabaseClient client,
+                             TransactionalOperator transactions,
+                             IngredientDictionary dictionary,
+                             @Value("${recipe.ingredients.batch-size:1000}") int batchSize) {
+        this.client = client;
+        this.transactions = transactions;
+        this.dictionary = dictionary;
+        this.batchSize = batchSize;
+    }
+
+    public Flux<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredients,
+                                     Optional<List<String>> instructionKeywords) {
+        return find(vegetarian, servings, includeIngredients, excludeIngredients, instructionKeywords, Optional.empty(), OptionalInt.empty());
+    }
+
+    /**
+     * Returns at most {@code limit} matching recipes with an id greater than {@code after}, ordered by id.
+     */
+    public Flux<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredients,
+                                     Optional<List<String>> instructionKeywords,
+                                     Optional<Long> after,
+                                     int limit) {
+        return find(vegetarian, servings, includeIngredients, excludeIngredients, instructionKeywords, after, OptionalInt.of(limit));
+    }
+
+    public Mono<Recipe> findById(Long id) {
+        return withIngredients(client.sql(SELECT + " where r.id = :id")
+                .bind("id", id)
+                .map(ReactiveRecipeRepository::toRecipe)
+                .all())
+                .next();
+    }
+
+    /**
+     * Updates the recipe if one with its id exists, and inserts it with a new id otherwise, as
+     * {@code RecipeRepository.save} does.
+     */
+    public Mono<Recipe> save(Recipe recipe) {
+        return ingredientIds(recipe)
+                .flatMap(ingredientIds -> Mono.justOrEmpty(recipe.getId())
+                        .filterWhen(id -> update(id, OptionalLong.empty(), recipe))
+                        .switchIfEmpty(Mono.defer(() -> insert(recipe)))
+                        .flatMap(id -> replaceIngredients(id, ingredientIds).then(Mono.fromCallable(() -> {
+                            recipe.setId(id);
+                            return recipe;
+                        })))
+                        .as(transactions::transactional));
+    }
+
+    /**
+     * Updates the recipe only if it still has the version it was read with, as the version check of
+     * Hibernate does, and returns it with its new version. Returns nothing if the recipe was changed or
+     * deleted since.
+     */
+    public Mono<Recipe> update(Long id, long version, Recipe recipe) {
+        return ingredientIds(recipe)
+                .flatMap(ingredientIds -> update(id, OptionalLong.of(version), recipe)
+                        .filter(Boolean::booleanValue)
+                        .flatMap(updated -> replaceIngredients(id, ingredientIds).then(Mono.fromCallable(() -> {
+                            recipe.setId(id);
+                            recipe.setVersion(version + 1);
+                            return recipe;
+                        })))
+                        .as(transactions::transactional));
+    }
+
+    public Mono<Void> deleteById(Long id) {
+        return client.sql("delete from recipe_ingredient where recipe_id = :id").bind("id", id).then()
+                .then(client.sql("delete from recipe where id = :id").bind("id", id).then())
+                .as(transactions::transactional);
+    }
+
+    private Flux<Recipe> find(Optional<Boolean> vegetarian,
+                              Optional<Integer> servings,
+                              Optional<List<String>> includeIngredients,
+                              Optional<List<String>> excludeIngredients,
+                              Optional<List<String>> instructionKeywords,
+                              Optional<Long> after,
+                              OptionalInt limit) {
+        return Mono.fromCallable(() -> Optional.of(ids(includeIngredients))
+                        .filter(ids -> ids.size() == includeIngredients.map(List::size).orElse(0))
+                        .map(includes -> Map.entry(includes, ids(excludeIngredients).stream().flatMap(List::stream).toList())))
+                .subscribeOn(Schedulers.boundedElastic())
+                // An unknown ingredient to include matches no recipe, an unknown one to exclude is left out
+                .flatMapMany(ids -> ids
+                        .map(known -> find(vegetarian, servings, known.getKey(), known.getValue(), instructionKeywords, after, limit))
+                        .orElseGet(Flux::empty));
+    }
+
+    /**
+     * The ids of the variants of each ingredient, see {@link IngredientDictionary#variants(String)}.
+     * Ingredients without any are left out.
+     */
+    private List<List<Integer>> ids(Optional<List<String>> ingredients) {
+        return ingredients.orElse(List.of()).stream()
+                .map(ingredient -> dictionary.variants(ingredient).stream()
+                        .map(dictionary::find)
+                        .flatMap(Optional::stream)
+                        .toList())
+                .filter(ids -> !ids.isEmpty())
+                .toList();
+    }
+
+    private Flux<Recipe> find(Optional<Boolean> vegetarian,
+                              Optional<Integer> servings,
+                              List<List<Integer>> included,
+                              List<Integer> excluded,
+                              Optional<List<String>> instructionKeywords,
+                              Optional<Long> after,
+                              OptionalInt limit) {
+        StringBuilder sql = new StringBuilder(SELECT).append(" where r.servings >= :servings");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("servings", servings.orElse(0));
+
+        vegetarian.ifPresent(veg -> {
+            sql.append(" and r.vegetarian = :vegetarian");
+            parameters.put("vegetarian", veg);
+        });
+        for (int i = 0; i < included.size(); i++) {
+            sql.append(" and exists (select 1 from recipe_ingredient i where i.recipe_id = r.id and i.ingredient_id in (:include").append(i).append("))");
+            parameters.put("include" + i, included.get(i));
+        }
+        for (int i = 0; i < excluded.size(); i++) {
+            sql.append(" and not exists (select 1 from recipe_ingredient i where i.recipe_id = r.id and i.ingredient_id = :exclude").append(i).append(')');
+            parameters.put("exclude" + i, excluded.get(i));
+        }
+        List<String> keywords = instructionKeywords.orElse(List.of());
+        for (int i = 0; i < keywords.size(); i++) {
+            sql.append(" and r.instruction like :keyword").append(i);
+            parameters.put("keyword" + i, "%" + keywords.get(i) + "%");
+        }
+        after.ifPresent(id -> {
+            sql.append(" and r.id > :after");
+            parameters.put("after", id);
+        });
+        if (limit.isPresent()) {
+            sql.append(" order by r.id limit :limit");
+            parameters.put("limit", limit.getAsInt());
+        }
+
+        GenericExecuteSpec spec = client.sql(sql.toString());
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            spec = spec.bind(parameter.getKey(), parameter.getValue());
+        }
+        return withIngredients(spec.map(ReactiveRecipeRepository::toRecipe).all());
+    }
+
+    /**
+     * Sets the ingredients of the recipes, reading them in batches of {@code recipe.ingredients.batch-size}
+     * as the recipes are requested.
+     */
+    private Flux<Recipe> withIngredients(Flux<Recipe> recipes) {
+        return recipes
+                .buffer(batchSize)
+                .concatMap(batch -> {
+                    Map<Long, Recipe> byId = new HashMap<>();
+                    batch.forEach(recipe -> byId.put(recipe.getId(), recipe));
+                    return client.sql("select recipe_id, ingredient_id from recipe_ingredient where recipe_id in (:ids)")
+                            .bind("ids", byId.keySet())
+                            .map(row -> Map.entry(row.get("recipe_id", Long.class), row.get("ingredient_id", Integer.class)))
+                            .all()
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(ingredient -> byId.get(ingredient.getKey()).getIngredients().add(dictionary.name(ingredient.getValue())))
+                            .thenMany(Flux.fromIterable(batch));
+                }, 1);
+    }
+
+    private Mono<List<Integer>> ingredientIds(Recipe recipe) {
+        Set<String> ingredients = recipe.getIngredients() == null ? Set.of() : recipe.getIngredients();
+        return Mono.fromCallable(() -> ingredients.stream().map(dictionary::id).toList())
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Boolean> update(Long id, OptionalLong version, Recipe recipe) {
+        String sql = "update recipe set title = :title, vegetarian = :vegetarian, servings = :servings, instruction = :instruction, version = version + 1, last_modified = current_timestamp where id = :id";
+        GenericExecuteSpec spec = client.sql(version.isPresent() ? sql + " and version = :version" : sql)
+                .bind("id", id);
+        if (version.isPresent()) {
+            spec = spec.bind("version", version.getAsLong());
+        }
+        return bindColumns(spec, recipe).fetch().rowsUpdated().map(rows -> rows > 0);
+    }
+
+    /**
+     * Takes the next value of Hibernate's pooled sequence as id. Hibernate only hands out ids up to the
+     * values it read itself, so the two never collide.
+     */
+    private Mono<Long> insert(Recipe recipe) {
+        return client.sql("select next value for recipe_seq")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(id -> {
+                    GenericExecuteSpec spec = client.sql("insert into recipe (id, title, vegetarian, servings, instruction, last_modified) values (:id, :title, :vegetarian, :servings, :instruction, current_timestamp)")
+                            .bind("id", id);
+                    return bindColumns(spec, recipe).then().thenReturn(id);
+                });
+    }
+
+    private Mono<Void> replaceIngredients(Long id, List<Integer> ingredientIds) {
+        return client.sql("delete from recipe_ingredient where recipe_id = :id").bind("id", id).then()
+                .thenMany(Flux.fromIterable(ingredientIds)
+                        .concatMap(ingredientId -> client.sql("insert into recipe_ingredient (recipe_id, ingredient_id) values (:id, :ingredientId)")
+                                .bind("id", id)
+                                .bind("ingredientId", ingredientId)
+                                .then()))
+                .then();
+    }
+
+    private static GenericExecuteSpec bindColumns(GenericExecuteSpec spec, Recipe recipe) {
+        spec = recipe.getTitle() == null ? spec.bindNull("title", String.class) : spec.bind("title", recipe.getTitle());
+        spec = recipe.getInstruction() == null ? spec.bindNull("instruction", String.class) : spec.bind("instruction", recipe.getInstruction());
+        return spec.bind("vegetarian", recipe.isVegetarian()).bind("servings", recipe.getServings());
+    }
+
+    private static Recipe toRecipe(Readable row) {
+        return Recipe.builder()
+                .id(row.get("id", Long.class))
+                .title(row.get("title", String.class))
+                .vegetarian(row.get("vegetarian", Boolean.class))
+                .servings(row.get("servings", Integer.class))
+                .instruction(row.get("instruction", String.class))
+                .version(row.get("version", Long.class))
+                .lastModified(lastModified(row.get("last_modified", OffsetDateTime.class)))
+                .ingredients(new HashSet<>())
+                .build();
+    }
+
+    private static Instant lastModified(OffsetDateTime lastModified) {
+        return lastModified == null ? null : lastModified.toInstant();
+    }
+}
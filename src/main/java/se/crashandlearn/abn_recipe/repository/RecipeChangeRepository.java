@@ -0,0 +1,20 @@
+package se.crashandlearn.abn_recipe.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import se.crashandlearn.abn_recipe.model.RecipeChange;
+
+import java.util.List;
+import java.util.Optional;
+
+
+@Repository
+public interface RecipeChangeRepository extends JpaRepository<RecipeChange, Long> {
+
+    List<RecipeChange> findBySeqGreaterThanAndSeqLessThanEqualOrderBySeq(long since, long until, Pageable page);
+
+    @Query("select max(c.seq) from RecipeChange c")
+    Optional<Long> findLastSeq();
+}
@@ -1,10 +1,62 @@
 package se.crashandlearn.abn_recipe.repository;
 
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeVersion;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
-@Repository
-public interface RecipeRepository extends JpaRepository<Recipe, Long>, RecipeRepositoryCustom {
+
+/**
+ * The operations the application runs on recipes. Only these are declared, rather than all of
+ * {@code JpaRepository}, so that every implementation, such as the sharded one, supports all of them.
+ */
+public interface RecipeRepository extends Repository<Recipe, Long>, RecipeRepositoryCustom {
+
+    String RECIPE_CACHE = "recipes";
+
+    @EntityGraph(attributePaths = "ingredients")
+    @Cacheable(cacheNames = RECIPE_CACHE, unless = "#result == null")
+    Optional<Recipe> findById(Long id);
+
+    boolean existsById(Long id);
+
+    @EntityGraph(attributePaths = "ingredients")
+    List<Recipe> findAll();
+
+    @EntityGraph(attributePaths = "ingredients")
+    List<Recipe> findAllById(Iterable<Long> ids);
+
+    @Query("select new se.crashandlearn.abn_recipe.model.RecipeVersion(r.id, r.version) from Recipe r where r.id in :ids")
+    List<RecipeVersion> findVersions(Collection<Long> ids);
+
+    long count();
+
+    @CacheEvict(cacheNames = RECIPE_CACHE, key = "#p0.id", condition = "#p0.id != null")
+    <S extends Recipe> S save(S recipe);
+
+    @CacheEvict(cacheNames = RECIPE_CACHE, allEntries = true)
+    <S extends Recipe> List<S> saveAll(Iterable<S> recipes);
+
+    @Override
+    @CacheEvict(cacheNames = RECIPE_CACHE, key = "#p0")
+    Optional<Recipe> update(Long id, Consumer<Recipe> change);
+
+    @CacheEvict(cacheNames = RECIPE_CACHE, key = "#p0")
+    void deleteById(Long id);
+
+    @CacheEvict(cacheNames = RECIPE_CACHE, allEntries = true)
+    void deleteAll();
+
+    @CacheEvict(cacheNames = RECIPE_CACHE, allEntries = true)
+    void deleteAllInBatch();
+
+    void flush();
 }
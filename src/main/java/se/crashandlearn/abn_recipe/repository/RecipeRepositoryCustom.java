@@ -2,9 +2,14 @@ package se.crashandlearn.abn_recipe.repository;
 
 import org.springframework.stereotype.Repository;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+import se.crashandlearn.abn_recipe.model.RecipeField;
+import se.crashandlearn.abn_recipe.model.RecipeSummary;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 
 @Repository
@@ -14,4 +19,66 @@ public interface RecipeRepositoryCustom {
                               Optional<List<String>> containsIngredient,
                               Optional<List<String>> notContainsIngredient,
                               Optional<List<String>> instructionKeyword);
+
+    /**
+     * Returns at most {@code limit} matching recipes with an id greater than {@code after}, ordered by id.
+     */
+    List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                              Optional<Integer> servings,
+                              Optional<List<String>> containsIngredient,
+                              Optional<List<String>> notContainsIngredient,
+                              Optional<List<String>> instructionKeyword,
+                              Optional<Long> after,
+                              int limit);
+
+    /**
+     * Same as the paged {@link #findFiltered}, reading only the given fields of the recipes. The others
+     * are left empty, without querying their columns.
+     */
+    List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                              Optional<Integer> servings,
+                              Optional<List<String>> containsIngredient,
+                              Optional<List<String>> notContainsIngredient,
+                              Optional<List<String>> instructionKeyword,
+                              Optional<Long> after,
+                              int limit,
+                              Set<RecipeField> fields);
+
+    /**
+     * Same matches as {@link #findFiltered}, reading neither ingredients nor instructions.
+     */
+    List<RecipeSummary> findFilteredSummaries(Optional<Boolean> vegetarian,
+                                              Optional<Integer> servings,
+                                              Optional<List<String>> containsIngredient,
+                                              Optional<List<String>> notContainsIngredient,
+                                              Optional<List<String>> instructionKeyword);
+
+    /**
+     * Passes every matching recipe to the action, in the order of {@link #findFiltered}, without
+     * holding more than one fetch of recipes in memory.
+     */
+    void scrollFiltered(Optional<Boolean> vegetarian,
+                        Optional<Integer> servings,
+                        Optional<List<String>> containsIngredient,
+                        Optional<List<String>> notContainsIngredient,
+                        Optional<List<String>> instructionKeyword,
+                        Consumer<Recipe> action);
+
+    /**
+     * Counts the recipes {@link #findFiltered} matches by vegetarian, servings and ingredient, listing
+     * the {@code topIngredients} most common ingredients.
+     */
+    RecipeFacets findFacets(Optional<Boolean> vegetarian,
+                            Optional<Integer> servings,
+                            Optional<List<String>> containsIngredient,
+                            Optional<List<String>> notContainsIngredient,
+                            Optional<List<String>> instructionKeyword,
+                            int topIngredients);
+
+    /**
+     * Applies the change to the stored recipe and writes what it changed: only the changed columns,
+     * and only the ingredient rows added or removed. Returns the recipe with its new version and its
+     * ingredients, or nothing if there is no recipe with the id.
+     */
+    Optional<Recipe> update(Long id, Consumer<Recipe> change);
 }
@@ -1,49 +1,616 @@
 package se.crashandlearn.abn_recipe.repository;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
+import org.hibernate.Hibernate;
+import org.hibernate.jpa.HibernateHints;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+import se.crashandlearn.abn_recipe.cache.RecipeQueryCache;
+import se.crashandlearn.abn_recipe.index.RecipeIngredientIndex;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
+import se.crashandlearn.abn_recipe.ingredient.IngredientNormalizer;
+import se.crashandlearn.abn_recipe.metrics.FilterShape;
+import se.crashandlearn.abn_recipe.model.Ingredient;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+import se.crashandlearn.abn_recipe.model.RecipeField;
+import se.crashandlearn.abn_recipe.model.RecipeSummary;
+import se.crashandlearn.abn_recipe.search.InstructionIndex;
+import se.crashandlearn.abn_recipe.slowquery.SlowQueryLog;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Recipes are read as plain rows and their ingredients with one additional query per batch of
+ * recipes, instead of letting Hibernate load the ingredient collection of every recipe separately.
+ */
 public class RecipeRepositoryCustomImpl implements RecipeRepositoryCustom {
 
     @PersistenceContext
     private EntityManager entityManager;
 
+    private final Optional<RecipeIngredientIndex> ingredientIndex;
+
+    private final Optional<InstructionIndex> instructionIndex;
+
+    private final Optional<RecipeQueryCache> queryCache;
+
+    private final int fetchSize;
+
+    private final int batchSize;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Optional<SlowQueryLog> slowQueryLog;
+
+    private final IngredientDictionary dictionary;
+
+    RecipeRepositoryCustomImpl(Optional<RecipeIngredientIndex> ingredientIndex,
+                               Optional<InstructionIndex> instructionIndex,
+                               Optional<RecipeQueryCache> queryCache,
+                               @Value("${recipe.stream.fetch-size:500}") int fetchSize,
+                               @Value("${recipe.ingredients.batch-size:1000}") int batchSize,
+                               MeterRegistry meterRegistry,
+                               Optional<SlowQueryLog> slowQueryLog,
+                               IngredientDictionary dictionary) {
+        this.ingredientIndex = ingredientIndex;
+        this.instructionIndex = instructionIndex;
+        this.queryCache = queryCache;
+        this.fetchSize = fetchSize;
+        this.batchSize = batchSize;
+        this.meterRegistry = meterRegistry;
+        this.slowQueryLog = slowQueryLog;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Which part of the matches to return, and which of their fields to read. A keyset page is ordered
+     * by id, otherwise recipes ranked by the instruction index keep their relevance order. Only the
+     * selected columns are queried, and ingredients are only read if they are one of the fields.
+     */
+    private record Page(Optional<Long> after, int limit, boolean scroll, Set<RecipeField> fields) {
+
+        static final Page ALL = new Page(Optional.empty(), Integer.MAX_VALUE, false, RecipeField.ALL);
+
+        static final Page SUMMARIES = new Page(Optional.empty(), Integer.MAX_VALUE, false,
+                EnumSet.of(RecipeField.ID, RecipeField.TITLE, RecipeField.VEGETARIAN, RecipeField.SERVINGS));
+
+        static final Page IDS = new Page(Optional.empty(), Integer.MAX_VALUE, false, EnumSet.of(RecipeField.ID));
+
+        boolean keyset() {
+            return after.isPresent() || limit != Integer.MAX_VALUE;
+        }
+
+        boolean reads(RecipeField field) {
+            return fields.contains(field);
+        }
+    }
+
     @Override
     public List<Recipe> findFiltered(Optional<Boolean> vegetarian,
                                      Optional<Integer> servings,
                                      Optional<List<String>> includeIngredients,
                                      Optional<List<String>> excludeIngredient,
                                      Optional<List<String>> instructionKeyword) {
+        List<Recipe> recipes = new ArrayList<>();
+        find(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, Page.ALL, recipes::add);
+        return recipes;
+    }
+
+    @Override
+    public List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredient,
+                                     Optional<List<String>> instructionKeyword,
+                                     Optional<Long> after,
+                                     int limit) {
+        return findFiltered(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, after, limit, RecipeField.ALL);
+    }
+
+    @Override
+    public List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredient,
+                                     Optional<List<String>> instructionKeyword,
+                                     Optional<Long> after,
+                                     int limit,
+                                     Set<RecipeField> fields) {
+        List<Recipe> recipes = new ArrayList<>();
+        find(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, new Page(after, limit, false, fields), recipes::add);
+        return recipes;
+    }
 
+    @Override
+    public List<RecipeSummary> findFilteredSummaries(Optional<Boolean> vegetarian,
+                                                     Optional<Integer> servings,
+                                                     Optional<List<String>> includeIngredients,
+                                                     Optional<List<String>> excludeIngredient,
+                                                     Optional<List<String>> instructionKeyword) {
+        List<RecipeSummary> summaries = new ArrayList<>();
+        find(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword,
+                Page.SUMMARIES,
+                recipe -> summaries.add(new RecipeSummary(recipe.getId(), recipe.getTitle(), recipe.isVegetarian(), recipe.getServings())));
+        return summaries;
+    }
 
+    @Override
+    @Transactional(readOnly = true)
+    public void scrollFiltered(Optional<Boolean> vegetarian,
+                               Optional<Integer> servings,
+                               Optional<List<String>> includeIngredients,
+                               Optional<List<String>> excludeIngredient,
+                               Optional<List<String>> instructionKeyword,
+                               Consumer<Recipe> action) {
+        find(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword,
+                new Page(Optional.empty(), Integer.MAX_VALUE, true, RecipeField.ALL), action);
+    }
+
+    /**
+     * Timed as {@code recipe.find} with the page tag {@code facets}.
+     */
+    @Override
+    public RecipeFacets findFacets(Optional<Boolean> vegetarian,
+                                   Optional<Integer> servings,
+                                   Optional<List<String>> includeIngredients,
+                                   Optional<List<String>> excludeIngredient,
+                                   Optional<List<String>> instructionKeyword,
+                                   int topIngredients) {
+        Optional<List<String>> includes = includeIngredients.map(Ingredient::canonical);
+        Optional<List<String>> excludes = excludeIngredient.map(Ingredient::canonical);
+        return Timer.builder("recipe.find")
+                .description("Recipe searches by filter shape")
+                .tags(FilterShape.of(vegetarian, servings, includes, excludes, instructionKeyword).tags().and("page", "facets"))
+                .serviceLevelObjectives(FilterShape.LATENCY_BUCKETS)
+                .register(meterRegistry)
+                .record(() -> facets(vegetarian, servings, includes, excludes, instructionKeyword, topIngredients));
+    }
+
+    @Override
+    @Transactional
+    public Optional<Recipe> update(Long id, Consumer<Recipe> change) {
+        Recipe recipe = entityManager.find(Recipe.class, id);
+        if (recipe == null) {
+            return Optional.empty();
+        }
+        change.accept(recipe);
+        // Written now so the recipe carries its new version. Ingredients not read by the change are read for the response
+        entityManager.flush();
+        Hibernate.initialize(recipe.getIngredients());
+        return Optional.of(recipe);
+    }
+
+    /**
+     * Times the search as {@code recipe.find} and records the number of recipes found as
+     * {@code recipe.find.results}, both tagged with the {@link FilterShape} and the kind of page.
+     * Searches slower than {@code recipe.slow-query.threshold-ms} are added to the {@link SlowQueryLog}.
+     * Ingredient filters are compared in canonical form, see {@link Ingredient#canonical(String)}, and
+     * match every variant of the ingredient, see {@link IngredientNormalizer}.
+     */
+    private void find(Optional<Boolean> vegetarian,
+                      Optional<Integer> servings,
+                      Optional<List<String>> includeIngredients,
+                      Optional<List<String>> excludeIngredient,
+                      Optional<List<String>> instructionKeyword,
+                      Page page,
+                      Consumer<Recipe> action) {
+        Optional<List<String>> includes = includeIngredients.map(Ingredient::canonical);
+        Optional<List<String>> excludes = excludeIngredient.map(Ingredient::canonical);
+        Tags tags = FilterShape.of(vegetarian, servings, includes, excludes, instructionKeyword).tags()
+                .and("page", page.scroll() ? "scroll" : page.equals(Page.SUMMARIES) ? "summaries" : page.keyset() ? "keyset" : "all");
+        int[] results = new int[1];
+        Runnable search = () -> cachedOrSearch(vegetarian, servings, includes, excludes, instructionKeyword, page, recipe -> {
+            results[0]++;
+            action.accept(recipe);
+        });
+        Timer.builder("recipe.find")
+                .description("Recipe searches by filter shape")
+                .tags(tags)
+                .serviceLevelObjectives(FilterShape.LATENCY_BUCKETS)
+                .register(meterRegistry)
+                .record(() -> slowQueryLog.ifPresentOrElse(
+                        log -> log.monitor(filters(vegetarian, servings, includes, excludes, instructionKeyword, page), search),
+                        search));
+        DistributionSummary.builder("recipe.find.results")
+                .description("Recipes found per search")
+                .tags(tags)
+                .serviceLevelObjectives(FilterShape.COUNT_BUCKETS)
+                .register(meterRegistry)
+                .record(results[0]);
+    }
+
+    /**
+     * The names in the dictionary each ingredient matches, in any case, singular or plural, or as a
+     * synonym, see {@link IngredientDictionary#variants(String)}. Ingredients without any are left out.
+     * New ingredients are added when a recipe with them is flushed, so for an unknown one the pending
+     * changes are flushed first, as Hibernate does before a query.
+     */
+    private List<List<String>> variants(Optional<List<String>> ingredients) {
+        List<String> names = ingredients.orElse(List.of());
+        if (entityManager.isJoinedToTransaction() && names.stream().anyMatch(name -> dictionary.variants(name).isEmpty())) {
+            entityManager.flush();
+        }
+        return names.stream()
+                .map(dictionary::variants)
+                .filter(variants -> !variants.isEmpty())
+                .toList();
+    }
+
+    private static Map<String, Object> filters(Optional<Boolean> vegetarian,
+                                               Optional<Integer> servings,
+                                               Optional<List<String>> includeIngredients,
+                                               Optional<List<String>> excludeIngredient,
+                                               Optional<List<String>> instructionKeyword,
+                                               Page page) {
+        Map<String, Object> filters = new LinkedHashMap<>();
+        vegetarian.ifPresent(value -> filters.put("vegetarian", value));
+        servings.ifPresent(value -> filters.put("servings", value));
+        includeIngredients.ifPresent(value -> filters.put("includesIngredients", value));
+        excludeIngredient.ifPresent(value -> filters.put("excludesIngredients", value));
+        instructionKeyword.ifPresent(value -> filters.put("instructionKeywords", value));
+        page.after().ifPresent(value -> filters.put("after", value));
+        if (page.limit() != Integer.MAX_VALUE) {
+            filters.put("limit", page.limit());
+        }
+        return filters;
+    }
+
+    /**
+     * With the query cache enabled, the ids of the matching recipes are looked up in the cache and only
+     * the recipes themselves are read from the database.
+     */
+    private void cachedOrSearch(Optional<Boolean> vegetarian,
+                                Optional<Integer> servings,
+                                Optional<List<String>> includeIngredients,
+                                Optional<List<String>> excludeIngredient,
+                                Optional<List<String>> instructionKeyword,
+                                Page page,
+                                Consumer<Recipe> action) {
+        if (queryCache.isEmpty()) {
+            search(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, page, action);
+            return;
+        }
+        RecipeQueryCache.Matches matches = queryCache.get().get(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, () -> {
+            List<Long> ids = new ArrayList<>();
+            search(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, Page.IDS, recipe -> ids.add(recipe.getId()));
+            return ids;
+        });
+        List<Long> ids = page.keyset() ? matches.page(page.after().orElse(0L), page.limit()) : matches.ids();
+        findByIds(ids.iterator(), recipe -> List.of(), page, action);
+    }
+
+    /**
+     * Filters are answered by the ingredient and instruction indexes when those are enabled, and by
+     * Criteria predicates otherwise.
+     */
+    private void search(Optional<Boolean> vegetarian,
+                      Optional<Integer> servings,
+                      Optional<List<String>> includeIngredients,
+                      Optional<List<String>> excludeIngredient,
+                      Optional<List<String>> instructionKeyword,
+                      Page page,
+                      Consumer<Recipe> action) {
+
+        Optional<List<Long>> rankedIds = instructionKeyword
+                .flatMap(keywords -> instructionIndex.map(index -> index.search(keywords)))
+                .map(ranked -> page.keyset() ? ranked.stream().filter(id -> id > page.after().orElse(0L)).sorted().toList() : ranked);
+        Optional<List<String>> keywordPredicates = rankedIds.isPresent() ? Optional.empty() : instructionKeyword;
+
+        if (ingredientIndex.isPresent()) {
+            Roaring64NavigableMap ids = ingredientIndex.get().match(vegetarian, servings, includeIngredients, excludeIngredient);
+            Iterator<Long> matches = rankedIds
+                    .map(ranked -> ranked.stream().filter(ids::contains).iterator())
+                    .orElseGet(() -> ascending(ids, page.after().orElse(0L)));
+            findByIds(matches, recipe -> instructionPredicates(recipe, keywordPredicates), page, action);
+            return;
+        }
+
+        // An unknown ingredient is in no recipe
+        List<List<String>> includes = variants(includeIngredients);
+        if (includes.size() < includeIngredients.map(List::size).orElse(0)) {
+            return;
+        }
+        List<String> excludes = variants(excludeIngredient).stream().flatMap(List::stream).toList();
+
+        Function<Root<Recipe>, List<Predicate>> filters = predicates(vegetarian, servings, includes, excludes, keywordPredicates, page.after());
+
+        if (rankedIds.isPresent()) {
+            findByIds(rankedIds.get().iterator(), filters, page, action);
+            return;
+        }
+
+        TypedQuery<Tuple> query = entityManager.createQuery(query(filters, page));
+        if (page.keyset()) {
+            query.setMaxResults(page.limit());
+        }
+        if (page.scroll()) {
+            List<Recipe> chunk = new ArrayList<>(fetchSize);
+            query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                    .getResultStream()
+                    .forEach(row -> {
+                        chunk.add(toRecipe(row, page));
+                        if (chunk.size() == fetchSize) {
+                            withIngredients(chunk, page).forEach(action);
+                            chunk.clear();
+                        }
+                    });
+            withIngredients(chunk, page).forEach(action);
+        } else {
+            withIngredients(query.getResultList().stream().map(row -> toRecipe(row, page)).toList(), page).forEach(action);
+        }
+    }
+
+    private Function<Root<Recipe>, List<Predicate>> predicates(Optional<Boolean> vegetarian,
+                                                               Optional<Integer> servings,
+                                                               List<List<String>> includes,
+                                                               List<String> excludes,
+                                                               Optional<List<String>> keywordPredicates,
+                                                               Optional<Long> after) {
+        return recipe -> {
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            List<Predicate> predicates = new ArrayList<>();
+
+            predicates.add(cb.greaterThanOrEqualTo(recipe.get("servings"), servings.orElse(0)));
+
+            vegetarian.ifPresent(veg -> predicates.add(cb.equal(recipe.get("vegetarian"), veg)));
+
+            predicates.addAll(instructionPredicates(recipe, keywordPredicates));
+
+            // As literals the ingredients are converted to their ids like the collection elements, as parameters they are not
+            includes.forEach(variants -> predicates.add(cb.or(variants.stream()
+                    .map(ingredient -> cb.isMember(cb.literal(ingredient), recipe.<Set<String>>get("ingredients")))
+                    .toArray(Predicate[]::new))));
+
+            excludes.forEach(ingredient -> predicates.add(cb.isNotMember(cb.literal(ingredient), recipe.<Set<String>>get("ingredients"))));
+
+            after.ifPresent(id -> predicates.add(cb.greaterThan(recipe.get("id"), id)));
+            return predicates;
+        };
+    }
+
+    /**
+     * Facets come from the ingredient index when it answers all filters. Otherwise the matches are
+     * counted in the database with the predicates of {@link #search}, in two grouped queries: one for
+     * vegetarian and servings, one for the ingredients.
+     */
+    private RecipeFacets facets(Optional<Boolean> vegetarian,
+                                Optional<Integer> servings,
+                                Optional<List<String>> includeIngredients,
+                                Optional<List<String>> excludeIngredient,
+                                Optional<List<String>> instructionKeyword,
+                                int topIngredients) {
+        Optional<List<Long>> rankedIds = instructionKeyword.flatMap(keywords -> instructionIndex.map(index -> index.search(keywords)));
+        Optional<List<String>> keywordPredicates = rankedIds.isPresent() ? Optional.empty() : instructionKeyword;
+
+        if (ingredientIndex.isPresent()) {
+            Roaring64NavigableMap ids = ingredientIndex.get().match(vegetarian, servings, includeIngredients, excludeIngredient);
+            rankedIds.ifPresent(ranked -> ids.and(Roaring64NavigableMap.bitmapOf(ranked.stream().mapToLong(Long::longValue).toArray())));
+            if (keywordPredicates.isEmpty()) {
+                return ingredientIndex.get().facets(ids, topIngredients);
+            }
+            return countByIds(ids.iterator(), recipe -> instructionPredicates(recipe, keywordPredicates), topIngredients);
+        }
+
+        List<List<String>> includes = variants(includeIngredients);
+        if (includes.size() < includeIngredients.map(List::size).orElse(0)) {
+            return RecipeFacets.of(0, Map.of(), Map.of(), topIngredients);
+        }
+        List<String> excludes = variants(excludeIngredient).stream().flatMap(List::stream).toList();
+
+        Function<Root<Recipe>, List<Predicate>> filters = predicates(vegetarian, servings, includes, excludes, keywordPredicates, Optional.empty());
+        if (rankedIds.isPresent()) {
+            return countByIds(rankedIds.get().iterator(), filters, topIngredients);
+        }
+        return count(filters, topIngredients);
+    }
+
+    /**
+     * Counts the recipes with the given ids that also fulfill the remaining filters, a batch of ids at a time.
+     */
+    private RecipeFacets countByIds(Iterator<Long> ids, Function<Root<Recipe>, List<Predicate>> filters, int topIngredients) {
+        List<RecipeFacets> batches = new ArrayList<>();
+        while (ids.hasNext()) {
+            List<Long> batch = new ArrayList<>(batchSize);
+            while (ids.hasNext() && batch.size() < batchSize) {
+                batch.add(ids.next());
+            }
+            batches.add(count(recipe -> {
+                List<Predicate> predicates = new ArrayList<>(filters.apply(recipe));
+                predicates.add(recipe.get("id").in(batch));
+                return predicates;
+            }, Integer.MAX_VALUE));
+        }
+        return RecipeFacets.sum(batches, topIngredients);
+    }
+
+    private RecipeFacets count(Function<Root<Recipe>, List<Predicate>> filters, int topIngredients) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> groups = cb.createTupleQuery();
+        Root<Recipe> recipe = groups.from(Recipe.class);
+        Expression<Long> recipes = cb.count(recipe);
+        groups.multiselect(recipe.get("vegetarian"), recipe.get("servings"), recipes)
+                .where(cb.and(filters.apply(recipe).toArray(new Predicate[0])))
+                .groupBy(recipe.get("vegetarian"), recipe.get("servings"));
+        long vegetarian = 0;
+        Map<Integer, Long> servings = new HashMap<>();
+        for (Tuple group : entityManager.createQuery(groups).getResultList()) {
+            if (group.get(0, Boolean.class)) {
+                vegetarian += group.get(2, Long.class);
+            }
+            servings.merge(group.get(1, Integer.class), group.get(2, Long.class), Long::sum);
+        }
+
+        CriteriaQuery<Tuple> ingredients = cb.createTupleQuery();
+        Root<Recipe> withIngredient = ingredients.from(Recipe.class);
+        Join<Recipe, String> ingredient = withIngredient.joinSet("ingredients");
+        Expression<Long> ingredientRecipes = cb.count(withIngredient);
+        ingredients.multiselect(ingredient, ingredientRecipes)
+                .where(cb.and(filters.apply(withIngredient).toArray(new Predicate[0])))
+                .groupBy(ingredient)
+                .orderBy(cb.desc(ingredientRecipes));
+        Map<String, Long> ingredientCounts = new HashMap<>();
+        entityManager.createQuery(ingredients)
+                .setMaxResults(topIngredients)
+                .getResultList()
+                .forEach(row -> ingredientCounts.put(row.get(0, String.class), row.get(1, Long.class)));
+
+        return RecipeFacets.of(vegetarian, servings, ingredientCounts, topIngredients);
+    }
+
+    private CriteriaQuery<Tuple> query(Function<Root<Recipe>, List<Predicate>> filters, Page page) {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery<Recipe> query = cb.createQuery(Recipe.class);
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
         Root<Recipe> recipe = query.from(Recipe.class);
 
-        List<Predicate> predicates = new ArrayList<>();
+        List<Selection<?>> columns = new ArrayList<>();
+        columns.add(recipe.get("id").alias("id"));
+        for (RecipeField field : page.fields()) {
+            if (field != RecipeField.ID && field != RecipeField.INGREDIENTS) {
+                columns.add(recipe.get(field.attribute()).alias(field.attribute()));
+            }
+        }
 
-        predicates.add(cb.greaterThanOrEqualTo(recipe.get("servings"), servings.orElse(0)));
+        query.multiselect(columns).where(cb.and(filters.apply(recipe).toArray(new Predicate[0])));
+        if (page.keyset()) {
+            query.orderBy(cb.asc(recipe.get("id")));
+        }
+        return query;
+    }
+
+    /**
+     * Loads the recipes with the given ids that also fulfill the remaining filters, in the order of the ids.
+     */
+    private void findByIds(Iterator<Long> ids, Function<Root<Recipe>, List<Predicate>> filters, Page page, Consumer<Recipe> action) {
+        int found = 0;
+        List<Long> batch = new ArrayList<>(batchSize);
+        while (ids.hasNext() && found < page.limit()) {
+            batch.clear();
+            while (ids.hasNext() && batch.size() < batchSize) {
+                batch.add(ids.next());
+            }
+
+            CriteriaQuery<Tuple> query = query(recipe -> {
+                List<Predicate> predicates = new ArrayList<>(filters.apply(recipe));
+                predicates.add(recipe.get("id").in(batch));
+                return predicates;
+            }, new Page(Optional.empty(), Integer.MAX_VALUE, page.scroll(), page.fields()));
 
-        vegetarian.ifPresent(veg -> predicates.add(cb.equal(recipe.get("vegetarian"), veg)));
+            Map<Long, Recipe> recipes = new HashMap<>();
+            entityManager.createQuery(query).getResultList().forEach(row -> {
+                Recipe recipe = toRecipe(row, page);
+                recipes.put(recipe.getId(), recipe);
+            });
 
-        instructionKeyword.ifPresent(keywords -> keywords
-                .forEach(keyword -> predicates.add(cb.like(recipe.get("instruction"), "%"+keyword+"%"))));
+            List<Recipe> ordered = new ArrayList<>();
+            for (Long id : batch) {
+                Recipe recipe = recipes.get(id);
+                if (recipe != null && found < page.limit()) {
+                    ordered.add(recipe);
+                    found++;
+                }
+            }
+            withIngredients(ordered, page).forEach(action);
+        }
+    }
 
-        includeIngredients.ifPresent(_ingredients -> _ingredients
-                .forEach(ingredient -> predicates.add(cb.isMember(ingredient, recipe.<Set<String>>get("ingredients")))));
+    private static Recipe toRecipe(Tuple row, Page page) {
+        Recipe.RecipeBuilder recipe = Recipe.builder().id(row.get("id", Long.class));
+        if (page.reads(RecipeField.TITLE)) {
+            recipe.title(row.get("title", String.class));
+        }
+        if (page.reads(RecipeField.VEGETARIAN)) {
+            recipe.vegetarian(row.get("vegetarian", Boolean.class));
+        }
+        if (page.reads(RecipeField.SERVINGS)) {
+            recipe.servings(row.get("servings", Integer.class));
+        }
+        if (page.reads(RecipeField.INSTRUCTION)) {
+            recipe.instruction(row.get("instruction", String.class));
+        }
+        if (page.reads(RecipeField.VERSION)) {
+            recipe.version(row.get("version", Long.class));
+        }
+        if (page.reads(RecipeField.LAST_MODIFIED)) {
+            recipe.lastModified(row.get("lastModified", Instant.class));
+        }
+        return recipe.build();
+    }
 
-        excludeIngredient.ifPresent(_ingredients -> _ingredients
-                .forEach(ingredient -> predicates.add(cb.isNotMember(ingredient, recipe.<Set<String>>get("ingredients")))));
+    /**
+     * Sets the ingredients of the recipes, reading them in batches of {@code recipe.ingredients.batch-size}.
+     */
+    private List<Recipe> withIngredients(List<Recipe> recipes, Page page) {
+        if (!page.reads(RecipeField.INGREDIENTS)) {
+            return recipes;
+        }
+        Map<Long, Recipe> byId = new HashMap<>();
+        recipes.forEach(recipe -> {
+            recipe.setIngredients(new HashSet<>());
+            byId.put(recipe.getId(), recipe);
+        });
+        List<Long> ids = new ArrayList<>(byId.keySet());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            entityManager.createQuery("select r.id, i from Recipe r join r.ingredients i where r.id in :ids", Object[].class)
+                    .setParameter("ids", ids.subList(from, Math.min(from + batchSize, ids.size())))
+                    .getResultList()
+                    .forEach(row -> byId.get((Long) row[0]).getIngredients().add((String) row[1]));
+        }
+        return recipes;
+    }
 
-        query.select(recipe).where(cb.and(predicates.toArray(new Predicate[0])));
+    private static Iterator<Long> ascending(Roaring64NavigableMap ids, long after) {
+        LongIterator iterator = ids.getLongIterator();
+        return new Iterator<>() {
+            private long next = advance();
 
-        return entityManager.createQuery(query).getResultList();
+            private long advance() {
+                while (iterator.hasNext()) {
+                    long id = iterator.next();
+                    if (id > after) {
+                        return id;
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Long next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                long id = next;
+                next = iterator.hasNext() ? iterator.next() : -1;
+                return id;
+            }
+        };
+    }
+
+    private List<Predicate> instructionPredicates(Root<Recipe> recipe, Optional<List<String>> instructionKeyword) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        return instructionKeyword
+                .map(keywords -> keywords.stream()
+                        .map(keyword -> cb.like(recipe.get("instruction"), "%"+keyword+"%"))
+                        .toList())
+                .orElse(List.of());
     }
 }
@@ -0,0 +1,142 @@
+package se.crashandlearn.abn_recipe.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits instruction text into lowercase, stemmed terms. Stemming is the first step of the
+ * Porter algorithm (plurals, -ed and -ing), which is enough to make "chopped" match "chop"
+ * without the surprises of full stemming on short recipe texts.
+ * <p>
+ * Tokens are cut after {@value #MAX_TERM_LENGTH} characters, so a pasted blob without spaces does not
+ * become a term of unbounded size. Keywords are cut the same way, so they still match it.
+ */
+public final class InstructionAnalyzer {
+
+    static final int MAX_TERM_LENGTH = 100;
+
+    private InstructionAnalyzer() {
+    }
+
+    public static List<String> analyze(String text) {
+        List<String> terms = tokenize(text);
+        terms.replaceAll(InstructionAnalyzer::stem);
+        return terms;
+    }
+
+    /**
+     * Lowercase words and numbers of the text, at most {@value #MAX_TERM_LENGTH} characters each,
+     * without stemming.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean partOfToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (partOfToken && start < 0) {
+                start = i;
+            } else if (!partOfToken && start >= 0) {
+                terms.add(text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    public static String stem(String word) {
+        if (word.length() <= 2 || !word.chars().allMatch(Character::isLetter)) {
+            return word;
+        }
+        StringBuilder b = new StringBuilder(word);
+
+        // Step 1a, plus -oes so that potatoes and tomatoes match their singular
+        if (endsWith(b, "sses") || endsWith(b, "ies") || (endsWith(b, "oes") && b.length() > 4)) {
+            b.setLength(b.length() - 2);
+        } else if (!endsWith(b, "ss") && endsWith(b, "s")) {
+            b.setLength(b.length() - 1);
+        }
+
+        // Step 1b
+        boolean removedSuffix = false;
+        if (endsWith(b, "eed")) {
+            if (measure(b, b.length() - 3) > 0) {
+                b.setLength(b.length() - 1);
+            }
+        } else if (endsWith(b, "ed") && containsVowel(b, b.length() - 2)) {
+            b.setLength(b.length() - 2);
+            removedSuffix = true;
+        } else if (endsWith(b, "ing") && containsVowel(b, b.length() - 3)) {
+            b.setLength(b.length() - 3);
+            removedSuffix = true;
+        }
+        if (removedSuffix) {
+            if (endsWith(b, "at") || endsWith(b, "bl") || endsWith(b, "iz")) {
+                b.append('e');
+            } else if (endsWithDoubleConsonant(b) && "lsz".indexOf(b.charAt(b.length() - 1)) < 0) {
+                b.setLength(b.length() - 1);
+            } else if (measure(b, b.length()) == 1 && endsWithCvc(b)) {
+                b.append('e');
+            }
+        }
+
+        // Step 1c
+        if (endsWith(b, "y") && containsVowel(b, b.length() - 1)) {
+            b.setCharAt(b.length() - 1, 'i');
+        }
+        return b.toString();
+    }
+
+    private static boolean endsWith(StringBuilder b, String suffix) {
+        int offset = b.length() - suffix.length();
+        return offset >= 0 && b.indexOf(suffix, offset) == offset;
+    }
+
+    private static boolean isConsonant(StringBuilder b, int i) {
+        return switch (b.charAt(i)) {
+            case 'a', 'e', 'i', 'o', 'u' -> false;
+            case 'y' -> i == 0 || !isConsonant(b, i - 1);
+            default -> true;
+        };
+    }
+
+    /**
+     * Number of vowel-consonant sequences in the first {@code length} characters.
+     */
+    private static int measure(StringBuilder b, int length) {
+        int m = 0;
+        boolean previousWasVowel = false;
+        for (int i = 0; i < length; i++) {
+            boolean vowel = !isConsonant(b, i);
+            if (previousWasVowel && !vowel) {
+                m++;
+            }
+            previousWasVowel = vowel;
+        }
+        return m;
+    }
+
+    private static boolean containsVowel(StringBuilder b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!isConsonant(b, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean endsWithDoubleConsonant(StringBuilder b) {
+        int last = b.length() - 1;
+        return last > 0 && b.charAt(last) == b.charAt(last - 1) && isConsonant(b, last);
+    }
+
+    private static boolean endsWithCvc(StringBuilder b) {
+        int last = b.length() - 1;
+        return last >= 2
+                && isConsonant(b, last - 2) && !isConsonant(b, last - 1) && isConsonant(b, last)
+                && "wxy".indexOf(b.charAt(last)) < 0;
+    }
+}
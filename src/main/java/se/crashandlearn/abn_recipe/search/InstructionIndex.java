@@ -0,0 +1,444 @@
+package se.crashandlearn.abn_recipe.search;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.crashandlearn.abn_recipe.event.RecipeDeletedEvent;
+import se.crashandlearn.abn_recipe.event.RecipeSavedEvent;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Positional inverted index over {@code Recipe.instruction}, used for the instructionKeywords filter.
+ * <p>
+ * Every keyword must match. A keyword with several words is a phrase query, and a keyword ending
+ * with {@code *} matches any term starting with its last word, e.g. {@code "chop*"} or {@code "pie cru*"}.
+ * Matches are ranked with BM25.
+ * <p>
+ * When {@code recipe.search.index-dir} is set the index is written there as a segment file plus a
+ * journal of the changes since, so a restart only re-analyzes the journaled instructions. The stored
+ * index is only used if it has the same recipes, at the same versions, as the database. Once the journal
+ * has {@code recipe.search.journal-limit} entries a new segment is written in the background, from a
+ * copy of the index taken under the read lock, so searches and writes do not wait for it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "recipe.search.full-text.enabled", havingValue = "true")
+public class InstructionIndex implements SmartInitializingSingleton {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final TreeMap<String, Map<Long, int[]>> postings = new TreeMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Optional<InstructionIndexStore> store;
+    private final int journalLimit;
+
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Held while a segment is written. The generation changes with every segment written from the
+    // index under its write lock, so a compaction of an older copy does not replace it
+    private final Lock segmentLock = new ReentrantLock();
+    private volatile long generation;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    InstructionIndex(@Value("${recipe.search.index-dir:}") String indexDir,
+                     @Value("${recipe.search.journal-limit:10000}") int journalLimit) {
+        this.store = indexDir.isBlank() ? Optional.empty() : Optional.of(new InstructionIndexStore(Path.of(indexDir)));
+        this.journalLimit = journalLimit;
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("instruction-index-");
+        threads.setDaemon(true);
+        this.compactor = Executors.newSingleThreadExecutor(threads);
+    }
+
+    private record Document(String[] terms, int length, long version) {
+    }
+
+    private record Term(List<String> words, boolean prefix) {
+    }
+
+    /**
+     * Returns the ids of recipes matching all keywords, best match first.
+     */
+    public List<Long> search(List<String> keywords) {
+        List<Term> terms = keywords.stream().map(InstructionIndex::parse).toList();
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            for (Term term : terms) {
+                Map<Long, Integer> frequencies = match(term);
+                Map<Long, Double> termScores = new HashMap<>();
+                double idf = Math.log(1 + (documents.size() - frequencies.size() + 0.5) / (frequencies.size() + 0.5));
+                double averageLength = documents.isEmpty() ? 1 : (double) totalLength / documents.size();
+                frequencies.forEach((id, frequency) -> {
+                    double lengthRatio = documents.get(id).length() / averageLength;
+                    termScores.put(id, idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * lengthRatio)));
+                });
+
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    scores.replaceAll((id, score) -> score + termScores.get(id));
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+            if (scores == null) {
+                return List.of();
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Long id, long version, String instruction) {
+        putAll(Collections.singletonMap(id, new InstructionIndexStore.Upsert(version, instruction)));
+    }
+
+    /**
+     * Indexes the instructions by recipe id, journaling them with a single write.
+     */
+    private void putAll(Map<Long, InstructionIndexStore.Upsert> upserts) {
+        lock.writeLock().lock();
+        try {
+            upserts.forEach(this::replace);
+            store.ifPresent(s -> {
+                s.appendUpserts(upserts);
+                if (s.journalSize() >= journalLimit && compacting.compareAndSet(false, true)) {
+                    compactor.execute(() -> compact(s));
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            if (removeDocument(id)) {
+                store.ifPresent(s -> s.appendDelete(id));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeSaved(RecipeSavedEvent event) {
+        put(event.recipe().getId(), event.recipe().getVersion(), event.recipe().getInstruction());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipeDeleted(RecipeDeletedEvent event) {
+        remove(event.id());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onRecipesImported(RecipesImportedEvent event) {
+        Map<Long, InstructionIndexStore.Upsert> upserts = new LinkedHashMap<>();
+        event.recipes().forEach(recipe -> upserts.put(recipe.getId(), new InstructionIndexStore.Upsert(recipe.getVersion(), recipe.getInstruction())));
+        putAll(upserts);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (store.isPresent() && load(store.get())) {
+            return;
+        }
+        rebuild();
+    }
+
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> entityManager
+                    .createQuery("select r.id, r.version, r.instruction from Recipe r", Object[].class)
+                    .getResultStream()
+                    .forEach(row -> add((Long) row[0], (Long) row[1], (String) row[2])));
+            log.info("Analyzed {} instructions into {} terms", documents.size(), postings.size());
+            store.ifPresent(this::writeSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            store.ifPresent(this::writeSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the stored segment and journal, unless they do not describe the recipes in the database,
+     * as happens when the database itself was not persisted.
+     */
+    private boolean load(InstructionIndexStore s) {
+        lock.writeLock().lock();
+        try {
+            clear();
+            Optional<InstructionIndexStore.Segment> segment = s.readSegment();
+            if (segment.isEmpty()) {
+                return false;
+            }
+            addSegment(segment.get());
+            s.replayJournal(this::replace, this::removeDocument);
+
+            // Every change takes the next version, so an update the index missed shows in the sum
+            Object[] stats = new TransactionTemplate(transactionManager).execute(status -> entityManager
+                    .createQuery("select count(r), max(r.id), sum(r.version) from Recipe r", Object[].class)
+                    .getSingleResult());
+            long maxId = documents.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+            long versionSum = documents.values().stream().mapToLong(Document::version).sum();
+            boolean upToDate = ((Long) stats[0]) == documents.size()
+                    && Objects.equals(stats[1] == null ? 0L : stats[1], maxId)
+                    && Objects.equals(stats[2] == null ? 0L : stats[2], versionSum);
+            if (upToDate) {
+                log.info("Loaded {} instructions from {}", documents.size(), s.directory());
+            }
+            return upToDate;
+        } catch (UncheckedIOException e) {
+            log.warn("Could not load instruction index from {}, rebuilding", s.directory(), e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeDocument(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return false;
+        }
+        totalLength -= document.length();
+        for (String term : document.terms()) {
+            Map<Long, int[]> docs = postings.get(term);
+            docs.remove(id);
+            if (docs.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the index as it is, under the write lock.
+     */
+    private void writeSegment(InstructionIndexStore s) {
+        segmentLock.lock();
+        try {
+            generation++;
+            s.rollJournal();
+            s.writeSegment(postings, lengths(), versions());
+        } finally {
+            segmentLock.unlock();
+        }
+    }
+
+    /**
+     * Copies the index and rolls the journal under the read lock, so no write falls in between, and
+     * writes the copy as the new segment after releasing it.
+     */
+    private void compact(InstructionIndexStore s) {
+        try {
+            TreeMap<String, Map<Long, int[]>> copy = new TreeMap<>();
+            Map<Long, Integer> lengths;
+            Map<Long, Long> versions;
+            long copied;
+            lock.readLock().lock();
+            try {
+                // Positions are replaced rather than changed, so the arrays are shared
+                postings.forEach((term, docs) -> copy.put(term, new HashMap<>(docs)));
+                lengths = lengths();
+                versions = versions();
+                copied = generation;
+                s.rollJournal();
+            } finally {
+                lock.readLock().unlock();
+            }
+            segmentLock.lock();
+            try {
+                if (generation == copied) {
+                    s.writeSegment(copy, lengths, versions);
+                }
+            } finally {
+                segmentLock.unlock();
+            }
+        } catch (RuntimeException e) {
+            // The rolled journal is kept and replayed on load, and taken along by the next compaction
+            log.warn("Could not compact instruction index in {}", s.directory(), e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private Map<Long, Long> versions() {
+        Map<Long, Long> versions = new HashMap<>();
+        documents.forEach((id, document) -> versions.put(id, document.version()));
+        return versions;
+    }
+
+    private Map<Long, Integer> lengths() {
+        Map<Long, Integer> lengths = new HashMap<>();
+        documents.forEach((id, document) -> lengths.put(id, document.length()));
+        return lengths;
+    }
+
+    private void clear() {
+        postings.clear();
+        documents.clear();
+        totalLength = 0;
+    }
+
+    private void replace(Long id, InstructionIndexStore.Upsert upsert) {
+        removeDocument(id);
+        add(id, upsert.version(), upsert.instruction());
+    }
+
+    private void add(Long id, long version, String instruction) {
+        List<String> words = InstructionAnalyzer.analyze(instruction);
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < words.size(); i++) {
+            positions.computeIfAbsent(words.get(i), key -> new ArrayList<>()).add(i);
+        }
+        positions.forEach((term, termPositions) -> postings
+                .computeIfAbsent(term, key -> new HashMap<>())
+                .put(id, termPositions.stream().mapToInt(Integer::intValue).toArray()));
+        documents.put(id, new Document(positions.keySet().toArray(new String[0]), words.size(), version));
+        totalLength += words.size();
+    }
+
+    private void addSegment(InstructionIndexStore.Segment segment) {
+        postings.putAll(segment.postings());
+        Map<Long, List<String>> terms = new HashMap<>();
+        postings.forEach((term, docs) -> docs.keySet().forEach(id -> terms.computeIfAbsent(id, key -> new ArrayList<>()).add(term)));
+        segment.lengths().forEach((id, length) -> {
+            documents.put(id, new Document(terms.getOrDefault(id, List.of()).toArray(new String[0]), length, segment.versions().get(id)));
+            totalLength += length;
+        });
+    }
+
+    private static Term parse(String keyword) {
+        boolean prefix = keyword.trim().endsWith("*");
+        List<String> words = new ArrayList<>(InstructionAnalyzer.tokenize(keyword));
+        for (int i = 0; i < words.size(); i++) {
+            // Prefixes are matched against stemmed terms, so they must not be stemmed themselves
+            if (!prefix || i < words.size() - 1) {
+                words.set(i, InstructionAnalyzer.stem(words.get(i)));
+            }
+        }
+        return new Term(words, prefix);
+    }
+
+    /**
+     * Returns the number of occurrences of the term (or phrase) per matching document.
+     */
+    private Map<Long, Integer> match(Term term) {
+        List<String> words = term.words();
+        if (words.isEmpty()) {
+            return Map.of();
+        }
+        List<Map<Long, int[]>> wordPostings = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            boolean prefix = term.prefix() && i == words.size() - 1;
+            Map<Long, int[]> docs = prefix ? prefixPostings(words.get(i)) : postings.getOrDefault(words.get(i), Map.of());
+            if (docs.isEmpty()) {
+                return Map.of();
+            }
+            wordPostings.add(docs);
+        }
+
+        Map<Long, Integer> frequencies = new HashMap<>();
+        Map<Long, int[]> first = wordPostings.stream().min(Comparator.comparingInt(Map::size)).orElseThrow();
+        for (Long id : first.keySet()) {
+            int[][] positions = new int[words.size()][];
+            boolean inAll = true;
+            for (int i = 0; i < words.size() && inAll; i++) {
+                positions[i] = wordPostings.get(i).get(id);
+                inAll = positions[i] != null;
+            }
+            if (!inAll) {
+                continue;
+            }
+            int count = 0;
+            for (int start : positions[0]) {
+                boolean phrase = true;
+                for (int i = 1; i < words.size() && phrase; i++) {
+                    phrase = Arrays.binarySearch(positions[i], start + i) >= 0;
+                }
+                if (phrase) {
+                    count++;
+                }
+            }
+            if (count > 0) {
+                frequencies.put(id, count);
+            }
+        }
+        return frequencies;
+    }
+
+    private Map<Long, int[]> prefixPostings(String prefix) {
+        SortedMap<String, Map<Long, int[]>> expansions = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (expansions.size() == 1) {
+            return expansions.values().iterator().next();
+        }
+        Map<Long, int[]> merged = new HashMap<>();
+        expansions.values().forEach(docs -> docs.forEach((id, positions) -> merged.merge(id, positions, (a, b) -> {
+            int[] union = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, union, a.length, b.length);
+            Arrays.sort(union);
+            return union;
+        })));
+        return merged;
+    }
+}
@@ -0,0 +1,298 @@
+package se.crashandlearn.abn_recipe.search;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk form of the {@link InstructionIndex}: one compressed segment with all postings, and a
+ * journal of the instructions saved or deleted since the segment was written. Replaying the journal
+ * is idempotent, so a crash between writing a new segment and truncating the journal is harmless.
+ * <p>
+ * Before a segment is written the journal is rolled: it is renamed and new changes go to a fresh one,
+ * so they can be appended while the segment is written. The rolled journal is deleted once the segment
+ * is in place, and replayed before the current one otherwise.
+ * <p>
+ * Every document is stored with the version of the recipe it was analyzed from, so that a loaded index
+ * can be checked against the versions in the database.
+ */
+final class InstructionIndexStore {
+
+    private static final int MAGIC = 0x52494458;
+    private static final int VERSION = 3;
+
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+
+    record Segment(TreeMap<String, Map<Long, int[]>> postings, Map<Long, Integer> lengths, Map<Long, Long> versions) {
+    }
+
+    record Upsert(long version, String instruction) {
+    }
+
+    private final Path directory;
+    private final Path segmentFile;
+    private final Path journalFile;
+    private final Path rolledJournalFile;
+
+    private DataOutputStream journal;
+    private int journalSize;
+
+    InstructionIndexStore(Path directory) {
+        this.directory = directory;
+        this.segmentFile = directory.resolve("instructions.seg");
+        this.journalFile = directory.resolve("instructions.journal");
+        this.rolledJournalFile = directory.resolve("instructions.journal.rolled");
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    int journalSize() {
+        return journalSize;
+    }
+
+    Optional<Segment> readSegment() {
+        if (!Files.exists(segmentFile)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(segmentFile))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Optional.empty();
+            }
+            Map<Long, Integer> lengths = new HashMap<>();
+            Map<Long, Long> versions = new HashMap<>();
+            int documentCount = in.readInt();
+            for (int i = 0; i < documentCount; i++) {
+                long id = in.readLong();
+                lengths.put(id, in.readInt());
+                versions.put(id, in.readLong());
+            }
+
+            TreeMap<String, Map<Long, int[]>> postings = new TreeMap<>();
+            int termCount = in.readInt();
+            for (int i = 0; i < termCount; i++) {
+                String term = readString(in);
+                int docCount = in.readInt();
+                Map<Long, int[]> docs = new HashMap<>(docCount * 2);
+                for (int d = 0; d < docCount; d++) {
+                    long id = in.readLong();
+                    int[] positions = new int[in.readInt()];
+                    for (int p = 0; p < positions.length; p++) {
+                        positions[p] = in.readInt();
+                    }
+                    docs.put(id, positions);
+                }
+                postings.put(term, docs);
+            }
+            return Optional.of(new Segment(postings, lengths, versions));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves the journal aside, so the changes appended from now on are not replaced by the next segment.
+     * If an earlier segment could not be written, the journal is added to the one rolled then.
+     */
+    void rollJournal() {
+        try {
+            closeJournal();
+            journalSize = 0;
+            if (!Files.exists(journalFile)) {
+                return;
+            }
+            if (Files.exists(rolledJournalFile)) {
+                try (OutputStream rolled = Files.newOutputStream(rolledJournalFile, StandardOpenOption.APPEND)) {
+                    Files.copy(journalFile, rolled);
+                }
+                Files.delete(journalFile);
+            } else {
+                Files.move(journalFile, rolledJournalFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the segment and deletes the rolled journal, whose changes it must contain.
+     */
+    void writeSegment(Map<String, Map<Long, int[]>> postings, Map<Long, Integer> lengths, Map<Long, Long> versions) {
+        try {
+            Files.createDirectories(directory);
+            Path temporary = directory.resolve("instructions.seg.tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(lengths.size());
+                for (Map.Entry<Long, Integer> document : lengths.entrySet()) {
+                    out.writeLong(document.getKey());
+                    out.writeInt(document.getValue());
+                    out.writeLong(versions.get(document.getKey()));
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<String, Map<Long, int[]>> term : postings.entrySet()) {
+                    writeString(out, term.getKey());
+                    out.writeInt(term.getValue().size());
+                    for (Map.Entry<Long, int[]> doc : term.getValue().entrySet()) {
+                        out.writeLong(doc.getKey());
+                        out.writeInt(doc.getValue().length);
+                        for (int position : doc.getValue()) {
+                            out.writeInt(position);
+                        }
+                    }
+                }
+            }
+            Files.move(temporary, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(rolledJournalFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void appendUpsert(Long id, long version, String instruction) {
+        appendUpserts(Collections.singletonMap(id, new Upsert(version, instruction)));
+    }
+
+    void appendUpserts(Map<Long, Upsert> upserts) {
+        try {
+            DataOutputStream out = journal();
+            for (Map.Entry<Long, Upsert> entry : upserts.entrySet()) {
+                String instruction = entry.getValue().instruction();
+                out.writeByte(UPSERT);
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue().version());
+                out.writeBoolean(instruction != null);
+                if (instruction != null) {
+                    writeString(out, instruction);
+                }
+                journalSize++;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void appendDelete(Long id) {
+        try {
+            DataOutputStream out = journal();
+            out.writeByte(DELETE);
+            out.writeLong(id);
+            out.flush();
+            journalSize++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replays the rolled journal, if any, and then the journal, in order. A partially written last entry
+     * is cut off, so that the entries appended after it can be read again.
+     */
+    void replayJournal(BiConsumer<Long, Upsert> upsert, Consumer<Long> delete) {
+        journalSize = 0;
+        replay(rolledJournalFile, upsert, delete);
+        replay(journalFile, upsert, delete);
+    }
+
+    private void replay(Path file, BiConsumer<Long, Upsert> upsert, Consumer<Long> delete) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long complete = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte operation = in.readByte();
+                long id = in.readLong();
+                long length = 9;
+                if (operation == DELETE) {
+                    delete.accept(id);
+                } else if (operation == UPSERT) {
+                    long version = in.readLong();
+                    String instruction = null;
+                    length += 9;
+                    if (in.readBoolean()) {
+                        int textLength = in.readInt();
+                        byte[] text = in.readNBytes(Math.max(textLength, 0));
+                        if (textLength < 0 || text.length < textLength) {
+                            break;
+                        }
+                        instruction = new String(text, StandardCharsets.UTF_8);
+                        length += 4 + textLength;
+                    }
+                    upsert.accept(id, new Upsert(version, instruction));
+                } else {
+                    break;
+                }
+                complete += length;
+                journalSize++;
+            }
+        } catch (EOFException e) {
+            // End of journal
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > complete) {
+                channel.truncate(complete);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Writes the string as its length in UTF-8 bytes followed by the bytes, as {@code writeUTF} is
+     * limited to 65535 bytes.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative string length " + length);
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private DataOutputStream journal() throws IOException {
+        if (journal == null) {
+            Files.createDirectories(directory);
+            journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        return journal;
+    }
+}
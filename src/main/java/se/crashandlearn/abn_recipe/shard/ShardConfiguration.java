@@ -0,0 +1,86 @@
+package se.crashandlearn.abn_recipe.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitions recipes over the databases listed in {@code recipe.shards.urls}. Every shard is migrated
+ * with the schema of the catalog database on startup.
+ * <p>
+ * The ingredient and instruction indexes, the query cache and write-behind updates hold the recipes of
+ * a single database, so they cannot be enabled together with shards.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "recipe.shards.enabled", havingValue = "true")
+class ShardConfiguration {
+
+    private static final List<String> SINGLE_DATABASE_FEATURES = List.of(
+            "recipe.index.ingredients.enabled", "recipe.search.full-text.enabled", "recipe.query-cache.enabled",
+            "recipe.write-behind.enabled");
+
+    @Bean
+    Shards shards(DataSource dataSource,
+                  Environment environment,
+                  @Value("${recipe.shards.urls}") List<String> urls,
+                  @Value("${spring.datasource.username:}") String username,
+                  @Value("${spring.datasource.password:}") String password) {
+        for (String feature : SINGLE_DATABASE_FEATURES) {
+            if (environment.getProperty(feature, Boolean.class, false)) {
+                throw new IllegalStateException(feature + " cannot be combined with recipe.shards.enabled");
+            }
+        }
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("recipe.shards.enabled requires the databases in recipe.shards.urls");
+        }
+        List<HikariDataSource> shards = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName("shard-" + shards.size());
+            shard.setJdbcUrl(url);
+            shard.setUsername(username);
+            shard.setPassword(password);
+            Flyway.configure()
+                    .dataSource(shard)
+                    .locations("classpath:db/migration", "classpath:db/shard")
+                    .load()
+                    .migrate();
+            shards.add(shard);
+        }
+        log.info("Partitioning recipes over {} shards", shards.size());
+        return new Shards(dataSource, shards);
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer shardTenants(Shards shards) {
+        return properties -> {
+            properties.put(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER, shards);
+            properties.put(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, shards);
+        };
+    }
+
+    @Bean
+    @Primary
+    ShardedRecipeRepository shardedRecipeRepository(Shards shards,
+                                                    @Qualifier("recipeRepository") RecipeRepository recipeRepository,
+                                                    PlatformTransactionManager transactionManager,
+                                                    @Value("${recipe.stream.fetch-size:500}") int fetchSize) {
+        return new ShardedRecipeRepository(shards, recipeRepository, transactionManager, fetchSize);
+    }
+}
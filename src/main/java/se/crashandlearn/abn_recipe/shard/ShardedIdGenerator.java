@@ -0,0 +1,92 @@
+package se.crashandlearn.abn_recipe.shard;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The pooled sequence generator, which on a shard only hands out ids that {@link Shards#shardOf(long)}
+ * assigns to that shard, so a recipe is found where it was created.
+ * <p>
+ * Ids on shards come from the sequence of the catalog database, so they are unique across shards. Every
+ * value of the sequence reserves the next increment size ids, which are spread over the pools of the
+ * shards they belong to and taken from there.
+ */
+public class ShardedIdGenerator extends SequenceStyleGenerator {
+
+    private Shards shards;
+
+    private final Map<Integer, Queue<Long>> pools = new HashMap<>();
+
+    private final Lock lock = new ReentrantLock();
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        if (serviceRegistry.getService(MultiTenantConnectionProvider.class) instanceof Shards configured) {
+            shards = configured;
+        }
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        int shard = shards == null ? -1 : shards.shardOf(session.getTenantIdentifier());
+        return shard < 0 ? super.generate(session, object) : next(shard, session);
+    }
+
+    private long next(int shard, SharedSessionContractImplementor session) {
+        lock.lock();
+        try {
+            Queue<Long> pool = pools.computeIfAbsent(shard, key -> new ArrayDeque<>());
+            while (pool.isEmpty()) {
+                long first = nextSequenceValue(session);
+                for (long id = first; id < first + getDatabaseStructure().getIncrementSize(); id++) {
+                    pools.computeIfAbsent(shards.shardOf(id), key -> new ArrayDeque<>()).add(id);
+                }
+            }
+            return pool.remove();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long nextSequenceValue(SharedSessionContractImplementor session) {
+        String sql = session.getJdbcServices().getDialect().getSequenceSupport()
+                .getSequenceNextValString(getDatabaseStructure().getPhysicalName().render());
+        Connection connection = null;
+        try {
+            connection = shards.getAnyConnection();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery(sql)) {
+                rows.next();
+                return rows.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new HibernateException("Could not read the next recipe id from the catalog", e);
+        } finally {
+            if (connection != null) {
+                try {
+                    shards.releaseAnyConnection(connection);
+                } catch (SQLException e) {
+                    throw new HibernateException("Could not release the catalog connection", e);
+                }
+            }
+        }
+    }
+}
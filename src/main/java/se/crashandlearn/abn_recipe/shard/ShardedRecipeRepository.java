@@ -0,0 +1,312 @@
+package se.crashandlearn.abn_recipe.shard;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+import se.crashandlearn.abn_recipe.model.RecipeField;
+import se.crashandlearn.abn_recipe.model.RecipeSummary;
+import se.crashandlearn.abn_recipe.model.RecipeVersion;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Recipes partitioned over the {@link Shards} by the hash of their id.
+ * <p>
+ * A recipe is read, saved and deleted on the shard owning it, new recipes are spread over the shards in
+ * turn. Searches run on all shards in parallel, each returning at most the requested number of recipes
+ * after the given id, and the results are merged in id order. Every shard is called in a transaction of
+ * its own, so a write spanning shards, such as a chunk of a bulk import, is not atomic, and streamed
+ * searches read one page at a time instead of from one snapshot.
+ */
+public class ShardedRecipeRepository implements RecipeRepository {
+
+    private static final Comparator<Recipe> BY_ID = Comparator.comparing(Recipe::getId);
+
+    private final Shards shards;
+
+    private final RecipeRepository repository;
+
+    private final TransactionTemplate reads;
+
+    private final TransactionTemplate writes;
+
+    private final ExecutorService executor;
+
+    private final int fetchSize;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * @param repository the repository of a single database, called with the sessions on one shard
+     */
+    ShardedRecipeRepository(Shards shards, RecipeRepository repository, PlatformTransactionManager transactionManager, int fetchSize) {
+        this.shards = shards;
+        this.repository = repository;
+        // A transaction of the caller is suspended, as its session is connected to another database
+        this.writes = new TransactionTemplate(transactionManager);
+        this.writes.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.reads = new TransactionTemplate(transactionManager, writes);
+        this.reads.setReadOnly(true);
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("shard-");
+        threads.setDaemon(true);
+        this.executor = Executors.newCachedThreadPool(threads);
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredient,
+                                     Optional<List<String>> instructionKeyword) {
+        return merge(all(reads, shard -> repository.findFiltered(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword)),
+                Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredient,
+                                     Optional<List<String>> instructionKeyword,
+                                     Optional<Long> after,
+                                     int limit) {
+        return findFiltered(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, after, limit, RecipeField.ALL);
+    }
+
+    /**
+     * The first {@code limit} recipes after {@code after} of all shards are among the first {@code limit}
+     * of each shard, so no shard is asked for more.
+     */
+    @Override
+    public List<Recipe> findFiltered(Optional<Boolean> vegetarian,
+                                     Optional<Integer> servings,
+                                     Optional<List<String>> includeIngredients,
+                                     Optional<List<String>> excludeIngredient,
+                                     Optional<List<String>> instructionKeyword,
+                                     Optional<Long> after,
+                                     int limit,
+                                     Set<RecipeField> fields) {
+        return merge(all(reads, shard -> repository.findFiltered(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, after, limit, fields)),
+                limit);
+    }
+
+    @Override
+    public List<RecipeSummary> findFilteredSummaries(Optional<Boolean> vegetarian,
+                                                     Optional<Integer> servings,
+                                                     Optional<List<String>> includeIngredients,
+                                                     Optional<List<String>> excludeIngredient,
+                                                     Optional<List<String>> instructionKeyword) {
+        return all(reads, shard -> repository.findFilteredSummaries(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(RecipeSummary::id))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Every shard counts all of its ingredients, so the most common ones of the sum are exact.
+     */
+    @Override
+    public RecipeFacets findFacets(Optional<Boolean> vegetarian,
+                                   Optional<Integer> servings,
+                                   Optional<List<String>> includeIngredients,
+                                   Optional<List<String>> excludeIngredient,
+                                   Optional<List<String>> instructionKeyword,
+                                   int topIngredients) {
+        return RecipeFacets.sum(all(reads, shard -> repository.findFacets(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, Integer.MAX_VALUE)),
+                topIngredients);
+    }
+
+    /**
+     * Reads the shards in pages of {@code recipe.stream.fetch-size} recipes each.
+     */
+    @Override
+    public void scrollFiltered(Optional<Boolean> vegetarian,
+                               Optional<Integer> servings,
+                               Optional<List<String>> includeIngredients,
+                               Optional<List<String>> excludeIngredient,
+                               Optional<List<String>> instructionKeyword,
+                               Consumer<Recipe> action) {
+        Optional<Long> after = Optional.empty();
+        List<Recipe> page;
+        do {
+            page = findFiltered(vegetarian, servings, includeIngredients, excludeIngredient, instructionKeyword, after, fetchSize, RecipeField.ALL);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                after = Optional.of(page.get(page.size() - 1).getId());
+            }
+        } while (page.size() == fetchSize);
+    }
+
+    @Override
+    public Optional<Recipe> findById(Long id) {
+        return on(shards.shardOf(id), reads, () -> repository.findById(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return on(shards.shardOf(id), reads, () -> repository.existsById(id));
+    }
+
+    @Override
+    public List<Recipe> findAll() {
+        return merge(all(reads, shard -> repository.findAll()), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Recipe> findAllById(Iterable<Long> ids) {
+        return merge(each(byShard(ids, Function.identity()), reads, repository::findAllById), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<RecipeVersion> findVersions(Collection<Long> ids) {
+        return each(byShard(ids, Function.identity()), reads, repository::findVersions)
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return all(reads, shard -> repository.count()).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public <S extends Recipe> S save(S recipe) {
+        return on(shardFor(recipe), writes, () -> repository.save(recipe));
+    }
+
+    @Override
+    public <S extends Recipe> List<S> saveAll(Iterable<S> recipes) {
+        return saveAll(recipes, repository::saveAll);
+    }
+
+    @Override
+    public Optional<Recipe> update(Long id, Consumer<Recipe> change) {
+        return on(shards.shardOf(id), writes, () -> repository.update(id, change));
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        on(shards.shardOf(id), writes, () -> {
+            repository.deleteById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll() {
+        all(writes, shard -> {
+            repository.deleteAll();
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        all(writes, shard -> {
+            repository.deleteAllInBatch();
+            return null;
+        });
+    }
+
+    /**
+     * Every call is committed on its shard when it returns, so there is nothing left to flush.
+     */
+    @Override
+    public void flush() {
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    private int shardFor(Recipe recipe) {
+        return recipe.getId() == null
+                ? Math.floorMod(nextShard.getAndIncrement(), shards.count())
+                : shards.shardOf(recipe.getId());
+    }
+
+    /**
+     * Saves the recipes of every shard in one call, returning the saved recipes in the given order.
+     */
+    private <S extends Recipe> List<S> saveAll(Iterable<S> recipes, Function<List<S>, List<S>> save) {
+        List<S> unsaved = new ArrayList<>();
+        recipes.forEach(unsaved::add);
+        Map<Integer, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < unsaved.size(); i++) {
+            positions.computeIfAbsent(shardFor(unsaved.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+        List<S> saved = new ArrayList<>(Collections.nCopies(unsaved.size(), null));
+        each(positions, writes, shardPositions -> {
+            List<S> shardSaved = save.apply(shardPositions.stream().map(unsaved::get).toList());
+            for (int i = 0; i < shardPositions.size(); i++) {
+                saved.set(shardPositions.get(i), shardSaved.get(i));
+            }
+            return null;
+        });
+        return saved;
+    }
+
+    private <T> Map<Integer, List<T>> byShard(Iterable<? extends T> items, Function<T, Long> id) {
+        Map<Integer, List<T>> byShard = new HashMap<>();
+        items.forEach(item -> byShard.computeIfAbsent(shards.shardOf(id.apply(item)), shard -> new ArrayList<>()).add(item));
+        return byShard;
+    }
+
+    private static List<Recipe> merge(List<List<Recipe>> results, int limit) {
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(BY_ID)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private <T> List<T> all(TransactionTemplate transaction, IntFunction<T> action) {
+        Map<Integer, Integer> everyShard = IntStream.range(0, shards.count()).boxed()
+                .collect(Collectors.toMap(Function.identity(), Function.identity()));
+        return each(everyShard, transaction, action::apply);
+    }
+
+    /**
+     * Runs the action with the argument of every shard, in parallel if there is more than one.
+     */
+    private <A, T> List<T> each(Map<Integer, A> arguments, TransactionTemplate transaction, Function<A, T> action) {
+        if (arguments.size() == 1) {
+            Map.Entry<Integer, A> only = arguments.entrySet().iterator().next();
+            return Collections.singletonList(on(only.getKey(), transaction, () -> action.apply(only.getValue())));
+        }
+        List<CompletableFuture<T>> results = arguments.entrySet().stream()
+                .map(argument -> CompletableFuture.supplyAsync(
+                        () -> on(argument.getKey(), transaction, () -> action.apply(argument.getValue())), executor))
+                .toList();
+        try {
+            return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> T on(int shard, TransactionTemplate transaction, Supplier<T> action) {
+        return shards.on(shard, () -> transaction.execute(status -> action.get()));
+    }
+}
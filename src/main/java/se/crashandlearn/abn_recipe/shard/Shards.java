@@ -0,0 +1,101 @@
+package se.crashandlearn.abn_recipe.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The databases recipes are partitioned over, and which of them the current thread works on.
+ * <p>
+ * Every shard is a Hibernate tenant, so the entity, the repository and its queries are the same for all
+ * shards and only the connection differs. Sessions opened while a thread runs {@link #on(int, Supplier)}
+ * use that shard, all others the catalog database given as {@code spring.datasource.url}, which keeps
+ * the ingredient dictionary and the recipe id sequence.
+ */
+public class Shards extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl
+        implements CurrentTenantIdentifierResolver, AutoCloseable {
+
+    static final String CATALOG = "catalog";
+
+    private final DataSource catalog;
+
+    private final List<HikariDataSource> shards;
+
+    private final ThreadLocal<Integer> current = new ThreadLocal<>();
+
+    Shards(DataSource catalog, List<HikariDataSource> shards) {
+        this.catalog = catalog;
+        this.shards = List.copyOf(shards);
+    }
+
+    public int count() {
+        return shards.size();
+    }
+
+    /**
+     * The shard holding the recipe with the given id, from the hash of the id.
+     */
+    public int shardOf(long id) {
+        return Math.floorMod(Long.hashCode(id), shards.size());
+    }
+
+    public DataSource dataSource(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Runs the action with the sessions it opens connected to the shard. A session that is already open,
+     * such as one of a surrounding transaction, keeps its database.
+     */
+    public <T> T on(int shard, Supplier<T> action) {
+        Integer previous = current.get();
+        current.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The shard of the tenant of a session, or -1 for the catalog.
+     */
+    int shardOf(String tenant) {
+        return tenant == null || tenant.equals(CATALOG) ? -1 : Integer.parseInt(tenant);
+    }
+
+    @Override
+    public String resolveCurrentTenantIdentifier() {
+        Integer shard = current.get();
+        return shard == null ? CATALOG : shard.toString();
+    }
+
+    @Override
+    public boolean validateExistingCurrentSessions() {
+        return false;
+    }
+
+    @Override
+    protected DataSource selectAnyDataSource() {
+        return catalog;
+    }
+
+    @Override
+    protected DataSource selectDataSource(String tenant) {
+        int shard = shardOf(tenant);
+        return shard < 0 ? catalog : shards.get(shard);
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
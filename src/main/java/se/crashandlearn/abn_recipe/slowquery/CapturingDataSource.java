@@ -0,0 +1,128 @@
+package se.crashandlearn.abn_recipe.slowquery;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the prepared statements executed on the current thread between {@link #start()} and
+ * {@link #stop()}, with their parameters, execution time and the number of rows read. Statements
+ * prepared while nothing is being captured are passed through unwrapped.
+ */
+public class CapturingDataSource extends DelegatingDataSource {
+
+    /**
+     * At most this many statements are kept per capture, a search reading ids in many batches is
+     * described well enough by its first statements.
+     */
+    static final int MAX_STATEMENTS = 50;
+
+    private static final ThreadLocal<List<CapturedStatement>> captured = new ThreadLocal<>();
+
+    static final class CapturedStatement {
+        final String sql;
+        final Map<Integer, Object> parameters = new TreeMap<>();
+        long nanos;
+        long rows;
+
+        CapturedStatement(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    public CapturingDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return capturing(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return capturing(super.getConnection(username, password));
+    }
+
+    static void start() {
+        captured.set(new ArrayList<>());
+    }
+
+    static List<CapturedStatement> stop() {
+        List<CapturedStatement> statements = captured.get();
+        captured.remove();
+        return statements == null ? List.of() : statements;
+    }
+
+    private static Connection capturing(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            List<CapturedStatement> statements = captured.get();
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")
+                    && statements != null && statements.size() < MAX_STATEMENTS) {
+                CapturedStatement capture = new CapturedStatement((String) args[0]);
+                statements.add(capture);
+                return capturing(statement, capture);
+            }
+            return result;
+        });
+    }
+
+    private static PreparedStatement capturing(PreparedStatement statement, CapturedStatement capture) {
+        return proxy(PreparedStatement.class, statement, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                capture.parameters.put(index, args[1]);
+            } else if (name.equals("clearParameters")) {
+                capture.parameters.clear();
+            } else if (name.startsWith("execute")) {
+                long start = System.nanoTime();
+                try {
+                    Object result = invoke(statement, method, args);
+                    return result instanceof ResultSet resultSet ? counting(resultSet, capture) : result;
+                } finally {
+                    capture.nanos += System.nanoTime() - start;
+                }
+            } else if (name.equals("getResultSet")) {
+                Object result = invoke(statement, method, args);
+                return result instanceof ResultSet resultSet ? counting(resultSet, capture) : result;
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private static ResultSet counting(ResultSet resultSet, CapturedStatement capture) {
+        return proxy(ResultSet.class, resultSet, (proxy, method, args) -> {
+            Object result = invoke(resultSet, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                capture.rows++;
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
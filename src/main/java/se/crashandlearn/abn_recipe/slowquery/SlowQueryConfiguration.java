@@ -0,0 +1,29 @@
+package se.crashandlearn.abn_recipe.slowquery;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the data source so {@link SlowQueryLog} sees the statements of every search.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "recipe.slow-query.enabled", havingValue = "true")
+class SlowQueryConfiguration {
+
+    @Bean
+    static BeanPostProcessor capturingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof CapturingDataSource)) {
+                    return new CapturingDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package se.crashandlearn.abn_recipe.slowquery;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Lists the searches in the {@link SlowQueryLog} at {@code /actuator/slowqueries}, the most recent
+ * first. A DELETE empties the log.
+ */
+@Component
+@Endpoint(id = "slowqueries")
+@ConditionalOnProperty(name = "recipe.slow-query.enabled", havingValue = "true")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryLog log;
+
+    SlowQueryEndpoint(SlowQueryLog log) {
+        this.log = log;
+    }
+
+    @ReadOperation
+    public List<SlowQueryLog.SlowQuery> slowQueries() {
+        return log.entries();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        log.clear();
+    }
+}
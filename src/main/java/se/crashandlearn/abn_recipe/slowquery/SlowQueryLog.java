@@ -0,0 +1,144 @@
+package se.crashandlearn.abn_recipe.slowquery;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * The last {@code recipe.slow-query.capacity} recipe searches that took at least
+ * {@code recipe.slow-query.threshold-ms}. Each entry has the filters of the search and every statement
+ * it ran: the SQL, its parameters, the rows read, the time taken and the plan the database reports for it.
+ * <p>
+ * Plans are requested with {@code EXPLAIN} when the log is read, on the reading thread, so a slow search
+ * does not take a second connection. The parameters are those of the search, the plan is the one the
+ * database would choose at the time of reading. Statements are captured by {@link CapturingDataSource}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "recipe.slow-query.enabled", havingValue = "true")
+public class SlowQueryLog {
+
+    public record SlowQuery(Instant at, double millis, Map<String, Object> filters, List<Statement> statements) {
+    }
+
+    public record Statement(String sql, List<String> parameters, long rows, double millis, String plan) {
+    }
+
+    private final DataSource dataSource;
+
+    private final long thresholdNanos;
+
+    private final int capacity;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    private final class Entry {
+        private final Instant at;
+        private final double millis;
+        private final Map<String, Object> filters;
+        private final List<CapturingDataSource.CapturedStatement> statements;
+        private volatile SlowQuery explained;
+
+        private Entry(Instant at, double millis, Map<String, Object> filters, List<CapturingDataSource.CapturedStatement> statements) {
+            this.at = at;
+            this.millis = millis;
+            this.filters = filters;
+            this.statements = statements;
+        }
+
+        private SlowQuery explained() {
+            // Two readers may both explain an entry, which only costs a few more EXPLAINs
+            if (explained == null) {
+                explained = new SlowQuery(at, millis, filters, statements.stream().map(SlowQueryLog.this::explain).toList());
+            }
+            return explained;
+        }
+    }
+
+    SlowQueryLog(DataSource dataSource,
+                 @Value("${recipe.slow-query.threshold-ms:500}") long thresholdMillis,
+                 @Value("${recipe.slow-query.capacity:100}") int capacity) {
+        if (capacity < 1) {
+            throw new IllegalStateException("recipe.slow-query.capacity must be at least 1");
+        }
+        this.dataSource = dataSource;
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Runs the search, and logs it if it takes at least the threshold.
+     */
+    public void monitor(Map<String, Object> filters, Runnable search) {
+        CapturingDataSource.start();
+        long start = System.nanoTime();
+        List<CapturingDataSource.CapturedStatement> statements;
+        try {
+            search.run();
+        } finally {
+            statements = CapturingDataSource.stop();
+        }
+        long nanos = System.nanoTime() - start;
+        if (nanos >= thresholdNanos) {
+            record(new Entry(Instant.now(), nanos / 1e6, filters, statements));
+        }
+    }
+
+    /**
+     * Returns the logged searches, the most recent first, explaining those not read before.
+     */
+    public List<SlowQuery> entries() {
+        List<Entry> logged;
+        synchronized (this) {
+            logged = List.copyOf(entries);
+        }
+        return logged.stream().map(Entry::explained).toList();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private synchronized void record(Entry entry) {
+        if (entries.size() == capacity) {
+            entries.removeLast();
+        }
+        entries.addFirst(entry);
+    }
+
+    private Statement explain(CapturingDataSource.CapturedStatement statement) {
+        List<String> parameters = statement.parameters.values().stream().map(String::valueOf).toList();
+        return new Statement(statement.sql, parameters, statement.rows, statement.nanos / 1e6, plan(statement));
+    }
+
+    private String plan(CapturingDataSource.CapturedStatement statement) {
+        if (!statement.sql.stripLeading().regionMatches(true, 0, "select", 0, "select".length())) {
+            return null;
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql)) {
+            for (Map.Entry<Integer, Object> parameter : statement.parameters.entrySet()) {
+                explain.setObject(parameter.getKey(), parameter.getValue());
+            }
+            StringJoiner plan = new StringJoiner("\n");
+            try (ResultSet rows = explain.executeQuery()) {
+                while (rows.next()) {
+                    plan.add(rows.getString(1));
+                }
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            log.debug("Could not explain {}", statement.sql, e);
+            return "EXPLAIN failed: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package se.crashandlearn.abn_recipe.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the newest {@code recipe.storage.warmup.recipes} recipes and their ingredients, so the pages
+ * holding them are in the database cache, and loads the ingredient dictionary. One search and one
+ * lookup by id then prepare the query plans, before the first request pays for them.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "recipe.storage.warmup.enabled", havingValue = "true")
+public class StorageWarmup implements SmartInitializingSingleton {
+
+    private final DataSource dataSource;
+
+    private final IngredientDictionary dictionary;
+
+    private final RecipeRepository repository;
+
+    private final int recipes;
+
+    private long warmedRecipes;
+
+    StorageWarmup(DataSource dataSource,
+                  IngredientDictionary dictionary,
+                  RecipeRepository repository,
+                  @Value("${recipe.storage.warmup.recipes:100000}") int recipes) {
+        this.dataSource = dataSource;
+        this.dictionary = dictionary;
+        this.repository = repository;
+        this.recipes = recipes;
+    }
+
+    /**
+     * Runs before the web server accepts requests, so the first ones do not read from disk.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.nanoTime();
+        int ingredients = dictionary.size();
+        long oldest = Long.MAX_VALUE;
+        long read = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("select id, title, vegetarian, servings, instruction from recipe order by id desc limit ?")) {
+                statement.setInt(1, recipes);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        oldest = rows.getLong(1);
+                        // Instructions are large objects, only read when asked for
+                        rows.getString(5);
+                        read++;
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement("select recipe_id, ingredient_id from recipe_ingredient where recipe_id >= ?")) {
+                statement.setLong(1, oldest);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        rows.getInt(2);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not warm up the database", e);
+        }
+
+        if (read > 0) {
+            repository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), 1);
+            repository.findById(oldest);
+        }
+        warmedRecipes = read;
+        log.info("Warmed up {} recipes and {} ingredients in {} ms", read, ingredients, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    long warmedRecipes() {
+        return warmedRecipes;
+    }
+}
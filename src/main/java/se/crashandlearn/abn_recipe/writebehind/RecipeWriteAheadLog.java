@@ -0,0 +1,266 @@
+package se.crashandlearn.abn_recipe.writebehind;
+
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * On-disk form of the updates held by {@link RecipeWriteBehind}: numbered segment files of complete
+ * recipes, each forced to disk before the update is acknowledged.
+ * <p>
+ * Appending and forcing are separate steps, so that concurrent updates share a force: an update appended
+ * while another one forces the segment waits for that force to end, and the next force covers every
+ * update appended until then.
+ * <p>
+ * A flush starts a new segment and deletes the older ones once their updates are in the database.
+ * Replaying a segment twice is harmless, a later update of a recipe replaces an earlier one.
+ */
+final class RecipeWriteAheadLog {
+
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+
+    private final Lock appendLock = new ReentrantLock();
+    private final Lock forceLock = new ReentrantLock();
+
+    private FileChannel channel;
+    private DataOutputStream segment;
+    private long segmentNumber;
+
+    private long appended;
+    private volatile long forced;
+
+    RecipeWriteAheadLog(Path directory) {
+        this.directory = directory;
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Replays the updates of every segment, oldest first. A partially written last update is ignored.
+     * Later updates are written to a new segment.
+     */
+    void replay(Consumer<Recipe> update) {
+        for (long number : segments()) {
+            segmentNumber = Math.max(segmentNumber, number);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentFile(number))))) {
+                while (true) {
+                    update.accept(read(in));
+                }
+            } catch (EOFException e) {
+                // End of segment
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the update to the segment, returning the sequence number to {@link #force} it with.
+     */
+    long append(Recipe recipe) {
+        appendLock.lock();
+        try {
+            DataOutputStream out = segment();
+            write(out, recipe);
+            out.flush();
+            return ++appended;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once the update with the given sequence number, and every update before it, is on disk.
+     */
+    void force(long sequence) {
+        if (forced >= sequence) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (forced >= sequence) {
+                return;
+            }
+            FileChannel toForce;
+            long upTo;
+            appendLock.lock();
+            try {
+                toForce = channel;
+                upTo = appended;
+            } finally {
+                appendLock.unlock();
+            }
+            if (toForce != null) {
+                toForce.force(false);
+            }
+            forced = upTo;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Forces and starts a new segment, returning the number of the last complete one.
+     */
+    long roll() {
+        forceLock.lock();
+        appendLock.lock();
+        try {
+            closeSegment();
+            return segmentNumber;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments up to and including the given one.
+     */
+    void deleteUpTo(long number) {
+        try {
+            for (long segment : segments()) {
+                if (segment <= number) {
+                    Files.delete(segmentFile(segment));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void close() throws IOException {
+        forceLock.lock();
+        appendLock.lock();
+        try {
+            closeSegment();
+        } finally {
+            appendLock.unlock();
+            forceLock.unlock();
+        }
+    }
+
+    private List<Long> segments() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(number + SUFFIX);
+    }
+
+    private DataOutputStream segment() throws IOException {
+        if (segment == null) {
+            Files.createDirectories(directory);
+            channel = FileChannel.open(segmentFile(++segmentNumber), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            segment = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+        return segment;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.flush();
+            channel.force(false);
+            forced = appended;
+            segment.close();
+            segment = null;
+            channel = null;
+        }
+    }
+
+    private static void write(DataOutputStream out, Recipe recipe) throws IOException {
+        out.writeLong(recipe.getId());
+        out.writeLong(recipe.getVersion());
+        out.writeLong(recipe.getLastModified().toEpochMilli());
+        writeText(out, recipe.getTitle());
+        out.writeBoolean(recipe.isVegetarian());
+        out.writeInt(recipe.getServings());
+        Set<String> ingredients = recipe.getIngredients();
+        out.writeInt(ingredients == null ? -1 : ingredients.size());
+        if (ingredients != null) {
+            for (String ingredient : ingredients) {
+                writeText(out, ingredient);
+            }
+        }
+        writeText(out, recipe.getInstruction());
+    }
+
+    private static Recipe read(DataInputStream in) throws IOException {
+        Recipe recipe = new Recipe();
+        recipe.setId(in.readLong());
+        recipe.setVersion(in.readLong());
+        recipe.setLastModified(Instant.ofEpochMilli(in.readLong()));
+        recipe.setTitle(readText(in));
+        recipe.setVegetarian(in.readBoolean());
+        recipe.setServings(in.readInt());
+        int ingredientCount = in.readInt();
+        if (ingredientCount < 0) {
+            recipe.setIngredients(null);
+        } else {
+            List<String> ingredients = new ArrayList<>(ingredientCount);
+            for (int i = 0; i < ingredientCount; i++) {
+                ingredients.add(readText(in));
+            }
+            recipe.setIngredients(new HashSet<>(ingredients));
+        }
+        recipe.setInstruction(readText(in));
+        return recipe;
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int length = in.readInt();
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,215 @@
+package se.crashandlearn.abn_recipe.writebehind;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
+import se.crashandlearn.abn_recipe.event.RecipesImportedEvent;
+import se.crashandlearn.abn_recipe.exception.RecipeModifiedException;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeVersion;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Acknowledges updates of existing recipes once they are in the {@link RecipeWriteAheadLog}, and writes
+ * them to the database every {@code recipe.write-behind.interval-ms}, all pending recipes in one
+ * transaction. Updates of a recipe before its flush replace each other, so a burst of updates is one write.
+ * <p>
+ * Every update takes the next version, as it would in the database, and a flush stores the version
+ * of the last one, so ETags stay valid. Until then the pending recipe is returned by id, searches see
+ * the stored one. Updates left in the log by a crash are flushed on start. Recipes deleted in the
+ * meantime are skipped.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "recipe.write-behind.enabled", havingValue = "true")
+public class RecipeWriteBehind {
+
+    private final RecipeRepository repository;
+
+    private final RecipeChangeLog changeLog;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate transaction;
+
+    private final RecipeWriteAheadLog writeAheadLog;
+
+    private final Map<Long, Recipe> pending = new ConcurrentHashMap<>();
+
+    private final Lock appendLock = new ReentrantLock();
+
+    private final Lock flushLock = new ReentrantLock();
+
+    private final ScheduledExecutorService scheduler;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    RecipeWriteBehind(RecipeRepository repository,
+                      RecipeChangeLog changeLog,
+                      ApplicationEventPublisher eventPublisher,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${recipe.write-behind.dir:./data/write-behind}") String directory,
+                      @Value("${recipe.write-behind.interval-ms:1000}") long intervalMillis) {
+        this.repository = repository;
+        this.changeLog = changeLog;
+        this.eventPublisher = eventPublisher;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.writeAheadLog = new RecipeWriteAheadLog(Path.of(directory));
+        this.writeAheadLog.replay(recipe -> pending.put(recipe.getId(), recipe));
+        if (!pending.isEmpty()) {
+            log.info("Flushing {} recipe updates left in {}", pending.size(), writeAheadLog.directory());
+        }
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("write-behind-");
+        threads.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threads);
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The latest update of the recipe not yet in the database.
+     */
+    public Optional<Recipe> pending(long id) {
+        return Optional.ofNullable(pending.get(id));
+    }
+
+    /**
+     * Replaces the recipe read as {@code current} with {@code recipe}, failing if it changed since it was read.
+     * Returns once the update is forced to the log, together with the updates appended at the same time.
+     */
+    public Recipe update(Recipe current, Recipe recipe) {
+        long sequence;
+        appendLock.lock();
+        try {
+            Recipe latest = pending.get(current.getId());
+            if (latest != null && latest.getVersion() != current.getVersion()) {
+                throw new RecipeModifiedException(current.getId());
+            }
+            recipe.setId(current.getId());
+            recipe.setVersion(current.getVersion() + 1);
+            recipe.setLastModified(Instant.now());
+            sequence = writeAheadLog.append(recipe);
+            pending.put(recipe.getId(), recipe);
+        } finally {
+            appendLock.unlock();
+        }
+        writeAheadLog.force(sequence);
+        return recipe;
+    }
+
+    /**
+     * Runs the delete of a recipe between flushes, dropping its pending update.
+     */
+    public void delete(long id, Runnable delete) {
+        flushLock.lock();
+        try {
+            pending.remove(id);
+            delete.run();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Writes the pending updates to the database. Updates arriving meanwhile wait for the next flush.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Recipe> batch;
+            long segment;
+            appendLock.lock();
+            try {
+                batch = new HashMap<>(pending);
+                segment = writeAheadLog.roll();
+            } finally {
+                appendLock.unlock();
+            }
+            if (!batch.isEmpty()) {
+                List<Recipe> written = transaction.execute(status -> write(batch));
+                eventPublisher.publishEvent(new RecipesImportedEvent(written));
+                batch.forEach(pending::remove);
+            }
+            writeAheadLog.deleteUpTo(segment);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private List<Recipe> write(Map<Long, Recipe> batch) {
+        Map<Long, Long> stored = repository.findVersions(batch.keySet()).stream()
+                .collect(Collectors.toMap(RecipeVersion::id, RecipeVersion::version));
+        List<Recipe> written = new ArrayList<>(stored.size());
+        List<Recipe> copies = new ArrayList<>(stored.size());
+        for (Recipe recipe : batch.values()) {
+            Long version = stored.get(recipe.getId());
+            if (version != null) {
+                written.add(recipe);
+                // The pending recipe is returned by id until the flush is over, so a copy is merged
+                copies.add(recipe.toBuilder().version(version).build());
+            }
+        }
+        repository.saveAll(copies);
+        repository.flush();
+        for (Recipe recipe : written) {
+            // Merging took the next stored version, the recipe keeps the version its last update was acknowledged with
+            entityManager.createQuery("update Recipe r set r.version = :version where r.id = :id and r.version < :version")
+                    .setParameter("version", recipe.getVersion())
+                    .setParameter("id", recipe.getId())
+                    .executeUpdate();
+        }
+        changeLog.saved(written, written.stream().map(Recipe::getId).collect(Collectors.toSet()));
+        return written;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // The updates stay pending and in the log, and are tried again with the next flush
+            log.warn("Could not flush {} recipe updates", pending.size(), e);
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writeAheadLog.close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+-- Schema as Hibernate generated it from Recipe and Ingredient
+create sequence recipe_seq start with 1 increment by 50;
+
+create table recipe (
+    id bigint not null,
+    title varchar(255),
+    vegetarian boolean not null,
+    servings integer not null,
+    instruction clob,
+    primary key (id)
+);
+
+create table ingredient (
+    id integer generated by default as identity,
+    name varchar(255) not null,
+    primary key (id),
+    constraint ingredient_name unique (name)
+);
+
+create table recipe_ingredient (
+    recipe_id bigint not null,
+    ingredient_id integer not null,
+    constraint recipe_ingredient_recipe foreign key (recipe_id) references recipe (id),
+    constraint recipe_ingredient_ingredient foreign key (ingredient_id) references ingredient (id)
+);
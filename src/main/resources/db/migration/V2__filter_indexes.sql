@@ -0,0 +1,12 @@
+-- Indexes for the predicates of RecipeRepositoryCustomImpl.search:
+--   ? [not] in (select ingredient_id from recipe_ingredient where recipe_id = r.id)
+--   select recipe_id, ingredient_id from recipe_ingredient where recipe_id in (...)
+-- Servings and vegetarian are left to the scan of the primary key. Neither is selective, and an index
+-- on them makes H2 sort every match of a keyset page instead of reading recipes in id order.
+
+-- A recipe holds an ingredient once. The key answers the membership subqueries and the batched
+-- ingredient reads from the index alone
+alter table recipe_ingredient add constraint recipe_ingredient_key primary key (recipe_id, ingredient_id);
+
+-- Recipes by ingredient, for looking up the recipes of a rare ingredient first
+create index ingredient_recipes on recipe_ingredient (ingredient_id, recipe_id);
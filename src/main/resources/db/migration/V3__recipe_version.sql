@@ -0,0 +1,4 @@
+-- Optimistic locking and conditional requests. Recipes written before this migration start at version 0
+-- with an unknown modification time
+alter table recipe add column version bigint default 0 not null;
+alter table recipe add column last_modified timestamp(6) with time zone;
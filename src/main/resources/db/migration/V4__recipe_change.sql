@@ -0,0 +1,10 @@
+-- Append-only log of created, updated and deleted recipes for incremental sync. Sequence numbers are
+-- assigned by the application, so that changes become visible in the order of their numbers
+create table recipe_change (
+    seq bigint not null,
+    recipe_id bigint not null,
+    operation varchar(16) not null,
+    version bigint,
+    changed_at timestamp(6) with time zone not null,
+    primary key (seq)
+);
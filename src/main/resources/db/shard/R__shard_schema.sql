@@ -0,0 +1,3 @@
+-- Shards hold recipes and their ingredient ids only. Ingredient names stay in the dictionary of the catalog
+-- database, so the ingredient table of a shard is empty and ids cannot refer to it
+alter table recipe_ingredient drop constraint if exists recipe_ingredient_ingredient;
@@ -0,0 +1,54 @@
+package se.crashandlearn.abn_recipe.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+class BoundedDataSourceTest {
+
+    @Test
+    void givenAllPermitsTaken_whenGetConnection_thenTimesOut() throws SQLException {
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenReturn(mock(Connection.class));
+        BoundedDataSource dataSource = new BoundedDataSource(pool, 1, 10);
+
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        verify(pool, times(1)).getConnection();
+    }
+
+    @Test
+    void givenConnection_whenClosedTwice_thenPermitIsReleasedOnce() throws SQLException {
+        DataSource pool = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(connection);
+        BoundedDataSource dataSource = new BoundedDataSource(pool, 2, 10);
+
+        Connection bounded = dataSource.getConnection();
+        assertEquals(1, dataSource.availablePermits());
+        bounded.close();
+        bounded.close();
+
+        assertEquals(2, dataSource.availablePermits());
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    void givenPoolFailure_whenGetConnection_thenPermitIsReleased() throws SQLException {
+        DataSource pool = mock(DataSource.class);
+        when(pool.getConnection()).thenThrow(new SQLException("down"));
+        BoundedDataSource dataSource = new BoundedDataSource(pool, 1, 10);
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+
+        assertEquals(1, dataSource.availablePermits());
+    }
+}
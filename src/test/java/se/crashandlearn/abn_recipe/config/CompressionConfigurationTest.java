@@ -0,0 +1,71 @@
+package se.crashandlearn.abn_recipe.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+class CompressionConfigurationTest {
+
+    private final CountDownLatch firstLineWritten = new CountDownLatch(1);
+    private final CountDownLatch firstLineChecked = new CountDownLatch(1);
+
+    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(new StreamingController())
+            .addFilter(new CompressionConfiguration().deferredFlushFilter().getFilter(), "/recipes", "/recipes/*")
+            .build();
+
+    @RestController
+    class StreamingController {
+        @GetMapping(value = "/recipes", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+        StreamingResponseBody stream() {
+            return outputStream -> {
+                outputStream.write("{\"title\":\"Pumpkin pie\"}\n".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+                firstLineWritten.countDown();
+                try {
+                    firstLineChecked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                outputStream.write("{\"title\":\"Apple pie\"}\n".getBytes(StandardCharsets.UTF_8));
+            };
+        }
+    }
+
+    @Test
+    void givenNdjsonAccepted_whenStreaming_thenFirstLineIsFlushedBeforeStreamCompletes() throws Exception {
+        MvcResult streaming = mvc.perform(get("/recipes").accept(MediaType.APPLICATION_NDJSON)).andReturn();
+        assertTrue(firstLineWritten.await(10, TimeUnit.SECONDS));
+
+        assertTrue(streaming.getResponse().isCommitted());
+        assertEquals("{\"title\":\"Pumpkin pie\"}\n", streaming.getResponse().getContentAsString());
+
+        firstLineChecked.countDown();
+        assertEquals(2, mvc.perform(asyncDispatch(streaming)).andReturn().getResponse().getContentAsString().split("\n").length);
+    }
+
+    @Test
+    void givenJsonAccepted_whenStreaming_thenFlushIsDeferred() throws Exception {
+        MvcResult streaming = mvc.perform(get("/recipes").accept(MediaType.APPLICATION_JSON)).andReturn();
+        assertTrue(firstLineWritten.await(10, TimeUnit.SECONDS));
+
+        assertFalse(streaming.getResponse().isCommitted());
+
+        firstLineChecked.countDown();
+        mvc.perform(asyncDispatch(streaming));
+    }
+}
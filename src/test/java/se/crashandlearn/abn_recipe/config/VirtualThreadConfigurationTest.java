@@ -0,0 +1,42 @@
+package se.crashandlearn.abn_recipe.config;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledForJreRange(min = JRE.JAVA_21)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "recipe.threads.virtual.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:virtualthreads"})
+class VirtualThreadConfigurationTest {
+    @Resource
+    ExecutorService virtualThreadExecutor;
+    @Resource
+    DataSource dataSource;
+    @Resource
+    TestRestTemplate restTemplate;
+
+    @Test
+    void givenVirtualThreadsEnabled_whenTaskSubmitted_thenRunsOnVirtualThread() throws Exception {
+        boolean virtual = virtualThreadExecutor.submit(() -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get();
+
+        assertTrue(virtual);
+    }
+
+    @Test
+    void givenVirtualThreadsEnabled_whenGetRecipes_thenDatabaseAccessIsBounded() {
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity("/recipes", String.class).getStatusCode());
+        assertInstanceOf(BoundedDataSource.class, dataSource);
+    }
+}
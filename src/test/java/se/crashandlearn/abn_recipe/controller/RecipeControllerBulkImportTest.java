@@ -0,0 +1,103 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.index.RecipeIngredientIndex;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "recipe.bulk.chunk-size=100",
+        "recipe.index.ingredients.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:bulkimport"})
+@AutoConfigureMockMvc
+class RecipeControllerBulkImportTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    RecipeIngredientIndex index;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+        index.rebuild();
+    }
+
+    @Test
+    void givenNdjson_whenBulkImport_thenRecipesAreSavedInChunks() throws Exception {
+        String recipes = IntStream.range(0, 250)
+                .mapToObj(i -> "{\"title\":\"Pie " + i + "\",\"vegetarian\":true,\"servings\":2,\"ingredients\":[\"Flour\",\"Apple\"],\"instruction\":\"Bake\"}")
+                .collect(Collectors.joining("\n"));
+
+        mvc.perform(post("/recipes/bulk")
+                        .contentType(RecipeController.APPLICATION_NDJSON_VALUE)
+                        .content(recipes))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].saved").value(100))
+                .andExpect(jsonPath("$[2].saved").value(50));
+
+        assertEquals(250, repository.count());
+        assertEquals(250, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("Apple")), Optional.empty()).getLongCardinality());
+    }
+
+    @Test
+    void givenJsonArrayWithIds_whenBulkImport_thenRecipesAreUpdated() throws Exception {
+        Recipe pie = repository.save(Recipe.builder().title("Pumpkin pie").servings(2).build());
+
+        mvc.perform(post("/recipes/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":" + pie.getId() + ",\"title\":\"Apple pie\",\"servings\":4,\"ingredients\":[\"Apple\"]},{\"title\":\"Cherry pie\",\"servings\":4}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].saved").value(2));
+
+        assertEquals(2, repository.count());
+        assertEquals("Apple pie", repository.findById(pie.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    void givenInvalidJson_whenBulkImport_thenEarlierChunksAreKept() throws Exception {
+        String recipes = IntStream.range(0, 100)
+                .mapToObj(i -> "{\"title\":\"Pie " + i + "\"}")
+                .collect(Collectors.joining("\n")) + "\n{\"title\":";
+
+        mvc.perform(post("/recipes/bulk")
+                        .contentType(RecipeController.APPLICATION_NDJSON_VALUE)
+                        .content(recipes))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].saved").value(100))
+                .andExpect(jsonPath("$[1].error").exists());
+
+        assertEquals(100, repository.count());
+    }
+
+    @Test
+    void givenChunkThatCannotBeSaved_whenBulkImport_thenErrorDoesNotShowTheCause() throws Exception {
+        mvc.perform(post("/recipes/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"title\":\"" + "Pie".repeat(100) + "\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].saved").value(0))
+                .andExpect(jsonPath("$[0].error").value("The recipes could not be saved"));
+
+        assertEquals(0, repository.count());
+    }
+}
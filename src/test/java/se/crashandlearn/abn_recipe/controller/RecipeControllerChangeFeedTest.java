@@ -0,0 +1,137 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.compression.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:changes"})
+class RecipeControllerChangeFeedTest {
+    @LocalServerPort
+    int port;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    RecipeChangeLog changeLog;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String APPLE_PIE = """
+            {"title": "Apple pie", "vegetarian": true, "servings": 4, "ingredients": ["Apple", "Flour"], "instruction": "Bake"}""";
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenRecipeWritten_whenGetChangesSince_thenEveryChangeInOrder() throws Exception {
+        long since = changeLog.last();
+
+        long id = mapper.readTree(send("POST", "/recipes", APPLE_PIE).body()).get("id").asLong();
+        send("PUT", "/recipes/" + id, APPLE_PIE);
+        send("DELETE", "/recipes/" + id, null);
+
+        JsonNode changes = mapper.readTree(get("/recipes/changes?since=" + since).body()).get("_embedded").get("recipeChangeList");
+        assertEquals(3, changes.size());
+        assertEquals(List.of("CREATED", "UPDATED", "DELETED"), List.of(changes.get(0).get("operation").asText(), changes.get(1).get("operation").asText(), changes.get(2).get("operation").asText()));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(since + i + 1, changes.get(i).get("seq").asLong());
+            assertEquals(id, changes.get(i).get("recipeId").asLong());
+        }
+        assertEquals(0, changes.get(0).get("version").asLong());
+        assertEquals(1, changes.get(1).get("version").asLong());
+        assertTrue(changes.get(2).get("version").isNull());
+
+        JsonNode page = mapper.readTree(get("/recipes/changes?since=" + since + "&limit=2").body());
+        assertEquals(2, page.get("_embedded").get("recipeChangeList").size());
+        URI next = URI.create(page.get("_links").get("next").get("href").asText());
+        JsonNode rest = mapper.readTree(client.send(HttpRequest.newBuilder(next).build(), HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals("DELETED", rest.get("_embedded").get("recipeChangeList").get(0).get("operation").asText());
+        assertEquals(since + 3, changeLog.last());
+    }
+
+    @Test
+    void givenStreamSubscribed_whenRecipeWritten_thenChangeIsSent() throws Exception {
+        send("POST", "/recipes", APPLE_PIE);
+        long since = changeLog.last();
+
+        HttpResponse<InputStream> stream = client.send(HttpRequest.newBuilder(uri("/recipes/changes"))
+                        .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+                        .header("Last-Event-ID", Long.toString(since - 1))
+                        .build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, stream.statusCode());
+
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(stream.body(), StandardCharsets.UTF_8))) {
+            // The change before the subscription is replayed from the log, the next one is pushed
+            assertEquals(List.of("id:" + since, "event:change"), event(events).subList(0, 2));
+            long id = mapper.readTree(send("POST", "/recipes", APPLE_PIE).body()).get("id").asLong();
+            List<String> pushed = event(events);
+            assertEquals("id:" + (since + 1), pushed.get(0));
+            JsonNode change = mapper.readTree(pushed.get(2).substring("data:".length()));
+            assertEquals("CREATED", change.get("operation").asText());
+            assertEquals(id, change.get("recipeId").asLong());
+        }
+    }
+
+    private static List<String> event(BufferedReader events) {
+        return assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = events.readLine()) != null && !line.isEmpty()) {
+                lines.add(line);
+            }
+            assertFalse(lines.isEmpty());
+            return lines;
+        });
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String json) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path));
+        if (json == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.method(method, HttpRequest.BodyPublishers.ofString(json)).header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        }
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        assertTrue(response.statusCode() < 300, response::body);
+        return response;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,95 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:conditional")
+@AutoConfigureMockMvc
+class RecipeControllerConditionalRequestTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+
+    private static final String APPLE_PIE = """
+            {"title": "Apple pie", "vegetarian": true, "servings": 4, "ingredients": ["Apple", "Flour"], "instruction": "Bake"}""";
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenCurrentETag_whenGetRecipe_thenNotModifiedUntilUpdated() throws Exception {
+        Recipe saved = repository.save(Recipe.builder().title("Pie").servings(2).ingredients(Set.of("Apple")).instruction("Bake").build());
+
+        mvc.perform(get("/recipes/" + saved.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED));
+        mvc.perform(get("/recipes/" + saved.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mvc.perform(put("/recipes/" + saved.getId()).contentType(MediaType.APPLICATION_JSON).content(APPLE_PIE))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+        mvc.perform(get("/recipes/" + saved.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+    }
+
+    @Test
+    void givenSameFiltersInOtherOrder_whenFind_thenNotModifiedUntilCatalogChanges() throws Exception {
+        String eTag = mvc.perform(get("/recipes?includesIngredients=Flour,Apple"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/recipes?includesIngredients=apple&includesIngredients=FLOUR&includesIngredients=apple").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mvc.perform(get("/recipes?includesIngredients=apple").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+
+        mvc.perform(post("/recipes").contentType(MediaType.APPLICATION_JSON).content(APPLE_PIE))
+                .andExpect(status().isCreated());
+        String changed = mvc.perform(get("/recipes?includesIngredients=Flour,Apple").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(eTag, changed);
+    }
+
+    @Test
+    void givenStaleETag_whenUpdateRecipe_thenPreconditionFailed() throws Exception {
+        Recipe saved = repository.save(Recipe.builder().title("Pie").servings(2).ingredients(Set.of("Apple")).instruction("Bake").build());
+
+        mvc.perform(put("/recipes/" + saved.getId()).header(HttpHeaders.IF_MATCH, "\"0\"").contentType(MediaType.APPLICATION_JSON).content(APPLE_PIE))
+                .andExpect(status().isCreated());
+        mvc.perform(put("/recipes/" + saved.getId()).header(HttpHeaders.IF_MATCH, "\"0\"").contentType(MediaType.APPLICATION_JSON).content(APPLE_PIE))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(put("/recipes/" + (saved.getId() + 1000)).header(HttpHeaders.IF_MATCH, "*").contentType(MediaType.APPLICATION_JSON).content(APPLE_PIE))
+                .andExpect(status().isPreconditionFailed());
+
+        assertEquals(1, repository.findById(saved.getId()).orElseThrow().getVersion());
+        assertEquals(1, repository.count());
+    }
+}
@@ -3,10 +3,17 @@ package se.crashandlearn.abn_recipe.controller;
 import jakarta.annotation.Resource;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import se.crashandlearn.abn_recipe.exception.RecipeNotFoundException;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
 
 import java.util.*;
 
@@ -18,6 +25,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 class RecipeControllerDatabaseTest {
     @Resource
     RecipeController controller;
+    @Resource
+    RecipeRepository repository;
 
     private final Recipe smallVeggiePie = Recipe.builder().title("Small veggie pie").vegetarian(true).servings(1).ingredients(new HashSet<>(List.of("Flour", "Carrot", "Broccoli"))).instruction("* Knead Flour and Water to make Dough.\n* Knead Dough to make Raw Pie Crust\n* Add chopped Carrot and Broccoli\n * Cook and serve!").build();
     private final Recipe largeVeggiePie = Recipe.builder().title("Large veggie pie").vegetarian(true).servings(4).ingredients(new HashSet<>(List.of("Flour", "Carrot", "Broccoli"))).instruction("* Knead Flour and Water to make Dough.\n* Knead Dough to make Raw Pie Crust\n* Add chopped Carrot and Broccoli\n * Cook and serve!").build();
@@ -27,9 +36,9 @@ class RecipeControllerDatabaseTest {
 
     @Test
     void givenRecipe_whenSave_thenCanFind() {
-        assertEquals(0, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size());
+        assertEquals(0, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size());
         controller.newRecipe(largeVeggiePie);
-        assertEquals(1, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size());
+        assertEquals(1, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size());
     }
 
     @Test
@@ -47,7 +56,7 @@ class RecipeControllerDatabaseTest {
         controller.newRecipe(largeVeggiePie);
         controller.newRecipe(largeMeatPie);
 
-        assertEquals(4, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size());
+        assertEquals(4, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size());
     }
 
     @Test
@@ -55,7 +64,7 @@ class RecipeControllerDatabaseTest {
         Recipe recipe = smallMeatPie;
         recipe = (Recipe) ((EntityModel<?>) controller.newRecipe(recipe).getBody()).getContent();
         long id = recipe.getId();
-        Recipe updatedRecipe = (Recipe) ((EntityModel<?>) controller.updateRecipe(largeVeggiePie, id).getBody()).getContent();
+        Recipe updatedRecipe = (Recipe) ((EntityModel<?>) controller.updateRecipe(largeVeggiePie, id, Optional.empty()).getBody()).getContent();
         assertEquals(id, recipe.getId());
         assertEquals(id, updatedRecipe.getId());
         assertEquals(4, updatedRecipe.getServings());
@@ -63,7 +72,7 @@ class RecipeControllerDatabaseTest {
 
     @Test
     void givenRecipeDoesNotExists_whenUpdateIsSent_thenRecipeIsCreated() {
-        Recipe updatedRecipe = (Recipe) ((EntityModel<?>) controller.updateRecipe(largeVeggiePie, 123L).getBody()).getContent();
+        Recipe updatedRecipe = (Recipe) ((EntityModel<?>) controller.updateRecipe(largeVeggiePie, 123L, Optional.empty()).getBody()).getContent();
         assertNotNull(updatedRecipe.getId());
         assertEquals(4, updatedRecipe.getServings());
     }
@@ -74,7 +83,7 @@ class RecipeControllerDatabaseTest {
         Recipe pumpkinPieRecipe = (Recipe) ((EntityModel<?>) controller.newRecipe(mushroomPie).getBody()).getContent();
         controller.newRecipe(smallVeggiePie);
 
-        Recipe result = controller.getRecipeById(pumpkinPieRecipe.getId()).getContent();
+        Recipe result = controller.getRecipeById(pumpkinPieRecipe.getId(), request()).getBody().getContent();
 
         assertEquals(pumpkinPieRecipe, result);
     }
@@ -82,7 +91,7 @@ class RecipeControllerDatabaseTest {
     @Test
     void givenRecipeMissing_whenGetRecipe_thenThrowRecipeNotFoundException() {
         try {
-            controller.getRecipeById(123L);
+            controller.getRecipeById(123L, request());
             fail();
         } catch (RecipeNotFoundException ex) {
             assertEquals("Could not find Recipe 123", ex.getMessage());
@@ -97,9 +106,9 @@ class RecipeControllerDatabaseTest {
         controller.newRecipe(largeMeatPie);
         controller.newRecipe(mushroomPie);
 
-        Collection<EntityModel<Recipe>> veggieRecipes = controller.find(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> veggieRecipes = controller.find(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(3, veggieRecipes.size());
-        Collection<EntityModel<Recipe>> meatRecipes = controller.find(Optional.of(false), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> meatRecipes = controller.find(Optional.of(false), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(2, meatRecipes.size());
     }
 
@@ -111,7 +120,7 @@ class RecipeControllerDatabaseTest {
         controller.newRecipe(largeMeatPie);
         controller.newRecipe(mushroomPie);
 
-        Collection<EntityModel<Recipe>> largeRecipes = controller.find(Optional.empty(), Optional.of(2), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> largeRecipes = controller.find(Optional.empty(), Optional.of(2), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(3, largeRecipes.size());
     }
 
@@ -123,11 +132,11 @@ class RecipeControllerDatabaseTest {
         controller.newRecipe(largeMeatPie);
         controller.newRecipe(mushroomPie);
 
-        Collection<EntityModel<Recipe>> allPies = controller.find(Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> allPies = controller.find(Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(5, allPies.size());
-        Collection<EntityModel<Recipe>> veggiePies = controller.find(Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Carrot", "Flour")), Optional.empty(), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> veggiePies = controller.find(Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Carrot", "Flour")), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(2, veggiePies.size());
-        Collection<EntityModel<Recipe>> nonExistingCombination = controller.find(Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Mushroom", "Broccoli")), Optional.empty(), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> nonExistingCombination = controller.find(Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Mushroom", "Broccoli")), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(0, nonExistingCombination.size());
     }
 
@@ -139,11 +148,11 @@ class RecipeControllerDatabaseTest {
         controller.newRecipe(largeMeatPie);
         controller.newRecipe(mushroomPie);
 
-        Collection<EntityModel<Recipe>> piesWithoutFlour = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> piesWithoutFlour = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(0, piesWithoutFlour.size());
-        Collection<EntityModel<Recipe>> piesWithoutVeggies = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Carrot", "Broccoli")), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> piesWithoutVeggies = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Carrot", "Broccoli")), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(3, piesWithoutVeggies.size());
-        Collection<EntityModel<Recipe>> piesWithoutMeatOrMushroom = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Mushroom", "Meat")), Optional.empty()).getContent();
+        Collection<EntityModel<Recipe>> piesWithoutMeatOrMushroom = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Mushroom", "Meat")), Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(2, piesWithoutMeatOrMushroom.size());
     }
 
@@ -155,11 +164,11 @@ class RecipeControllerDatabaseTest {
         controller.newRecipe(largeMeatPie);
         controller.newRecipe(mushroomPie);
 
-        Collection<EntityModel<Recipe>> piesWithMushroom = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Add chopped mushrooms"))).getContent();
+        Collection<EntityModel<Recipe>> piesWithMushroom = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Add chopped mushrooms")), Optional.empty(), Optional.empty()).getContent();
         assertEquals(1, piesWithMushroom.size());
-        Collection<EntityModel<Recipe>> piesWithoutCrustAndMeat = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Knead Dough to make Raw Pie Crust", "Add chopped Meat"))).getContent();
+        Collection<EntityModel<Recipe>> piesWithoutCrustAndMeat = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Knead Dough to make Raw Pie Crust", "Add chopped Meat")), Optional.empty(), Optional.empty()).getContent();
         assertEquals(2, piesWithoutCrustAndMeat.size());
-        Collection<EntityModel<Recipe>> piesWithMushroomAndMeat = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Add chopped mushrooms", "Add chopped Meat"))).getContent();
+        Collection<EntityModel<Recipe>> piesWithMushroomAndMeat = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(Arrays.asList("Add chopped mushrooms", "Add chopped Meat")), Optional.empty(), Optional.empty()).getContent();
         assertEquals(0, piesWithMushroomAndMeat.size());
     }
     @Test
@@ -175,7 +184,7 @@ class RecipeControllerDatabaseTest {
                 Optional.of(2),
                 Optional.of(List.of("Flour")),
                 Optional.of(List.of("Mushroom")),
-                Optional.of(List.of("Knead Flour and Water to make Dough"))).getContent();
+                Optional.of(List.of("Knead Flour and Water to make Dough")), Optional.empty(), Optional.empty()).getContent();
         assertEquals(1, recipes.size());
 
         Collection<EntityModel<Recipe>> recipesWithAndWithoutFlour = controller.find(
@@ -183,7 +192,43 @@ class RecipeControllerDatabaseTest {
                 Optional.empty(),
                 Optional.of(List.of("Flour")),
                 Optional.of(List.of("Flour")),
-                Optional.empty()).getContent();
+                Optional.empty(), Optional.empty(), Optional.empty()).getContent();
         assertEquals(0, recipesWithAndWithoutFlour.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void givenDataInDatabase_whenPagingWithLimit_thenEveryRecipeIsReturnedOnce() {
+        controller.newRecipe(smallVeggiePie);
+        controller.newRecipe(smallMeatPie);
+        controller.newRecipe(largeVeggiePie);
+        controller.newRecipe(largeMeatPie);
+        controller.newRecipe(mushroomPie);
+
+        List<Long> ids = new ArrayList<>();
+        Optional<Long> after = Optional.empty();
+        CollectionModel<EntityModel<Recipe>> page;
+        do {
+            page = controller.findPage(Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty(), 2, after, Optional.empty(), Optional.empty());
+            page.getContent().forEach(model -> ids.add(model.getContent().getId()));
+            after = Optional.of(ids.get(ids.size() - 1));
+        } while (page.getLink(IanaLinkRelations.NEXT).isPresent());
+
+        assertEquals(5, ids.size());
+        assertEquals(ids.stream().sorted().distinct().toList(), ids);
+    }
+
+    @Test
+    void givenDataInDatabase_whenScrolling_thenAllMatchesArePassedOn() {
+        controller.newRecipe(smallVeggiePie);
+        controller.newRecipe(smallMeatPie);
+        controller.newRecipe(largeVeggiePie);
+
+        List<Recipe> recipes = new ArrayList<>();
+        repository.scrollFiltered(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), recipes::add);
+        assertEquals(2, recipes.size());
+    }
+
+    private static WebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/recipes"), new MockHttpServletResponse());
+    }
+}
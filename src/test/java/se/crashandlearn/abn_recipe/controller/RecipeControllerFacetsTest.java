@@ -0,0 +1,86 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.metrics.SqlStatementCounter;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:facets")
+@AutoConfigureMockMvc
+class RecipeControllerFacetsTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    SqlStatementCounter counter;
+
+    @BeforeEach
+    void setup() {
+        repository.saveAll(List.of(
+                Recipe.builder().title("Carrot pie").vegetarian(true).servings(2).ingredients(Set.of("Flour", "Carrot")).instruction("Bake").build(),
+                Recipe.builder().title("Mushroom pie").vegetarian(true).servings(4).ingredients(Set.of("Flour", "Mushroom", "Carrot")).instruction("Bake").build(),
+                Recipe.builder().title("Meat pie").vegetarian(false).servings(4).ingredients(Set.of("Flour", "Meat")).instruction("Bake").build(),
+                Recipe.builder().title("Stew").vegetarian(false).servings(6).ingredients(Set.of("Meat", "Carrot")).instruction("Boil").build()));
+    }
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenFacetsParameter_whenFind_thenMatchesAreCounted() throws Exception {
+        mvc.perform(get("/recipes").param("includesIngredients", "Flour").param("facets", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$._embedded.recipeList.length()").value(3))
+                .andExpect(jsonPath("$.facets.count").value(3))
+                .andExpect(jsonPath("$.facets.vegetarian").value(2))
+                .andExpect(jsonPath("$.facets.servings.2").value(1))
+                .andExpect(jsonPath("$.facets.servings.4").value(2))
+                .andExpect(jsonPath("$.facets.ingredients[0].ingredient").value("flour"))
+                .andExpect(jsonPath("$.facets.ingredients[0].count").value(3))
+                .andExpect(jsonPath("$.facets.ingredients[1].ingredient").value("carrot"))
+                .andExpect(jsonPath("$.facets.ingredients.length()").value(2));
+
+        // The facets count every match, not only those of the page
+        mvc.perform(get("/recipes").param("limit", "1").param("facets", "1"))
+                .andExpect(jsonPath("$._embedded.recipeList.length()").value(1))
+                .andExpect(jsonPath("$.facets.count").value(4))
+                .andExpect(jsonPath("$._links.next.href").exists());
+
+        mvc.perform(get("/recipes"))
+                .andExpect(jsonPath("$.facets").doesNotExist());
+    }
+
+    @Test
+    void givenFilters_whenFindFacets_thenTwoGroupedQueries() {
+        counter.start();
+        RecipeFacets facets = repository.findFacets(Optional.empty(), Optional.of(4), Optional.empty(), Optional.of(List.of("Mushroom")), Optional.of(List.of("Bo")), 10);
+
+        assertEquals(2, counter.stop());
+        assertEquals(1, facets.count());
+        assertEquals(0, facets.vegetarian());
+        assertEquals(Map.of(6, 1L), facets.servings());
+        assertEquals(List.of(new RecipeFacets.IngredientCount("carrot", 1), new RecipeFacets.IngredientCount("meat", 1)), facets.ingredients());
+
+        assertEquals(0, repository.findFacets(Optional.empty(), Optional.empty(), Optional.of(List.of("Pumpkin")), Optional.empty(), Optional.empty(), 10).count());
+    }
+}
@@ -0,0 +1,72 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.hateoas.EntityModel;
+import se.crashandlearn.abn_recipe.index.RecipeIngredientIndex;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "recipe.index.ingredients.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:ingredientindex"})
+class RecipeControllerIngredientIndexTest {
+    @Resource
+    RecipeController controller;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    RecipeIngredientIndex index;
+
+    private final Recipe veggiePie = Recipe.builder().title("Veggie pie").vegetarian(true).servings(4).ingredients(new HashSet<>(List.of("Flour", "Carrot"))).instruction("Add chopped Carrot").build();
+    private final Recipe meatPie = Recipe.builder().title("Meat pie").vegetarian(false).servings(4).ingredients(new HashSet<>(List.of("Flour", "Meat"))).instruction("Add chopped Meat").build();
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+        index.rebuild();
+    }
+
+    @Test
+    void givenRecipesSaved_whenFilteringOnIngredients_thenIndexIsUsed() {
+        controller.newRecipe(veggiePie);
+        controller.newRecipe(meatPie);
+
+        assertEquals(2, find(Optional.of(List.of("Flour")), Optional.empty(), Optional.empty()));
+        assertEquals(1, find(Optional.empty(), Optional.of(List.of("Meat")), Optional.empty()));
+        assertEquals(1, find(Optional.of(List.of("Flour")), Optional.empty(), Optional.of(List.of("chopped Meat"))));
+    }
+
+    @Test
+    void givenRecipeUpdated_whenFilteringOnIngredients_thenIndexIsInSync() {
+        Recipe saved = (Recipe) ((EntityModel<?>) controller.newRecipe(veggiePie).getBody()).getContent();
+        controller.updateRecipe(meatPie, saved.getId(), Optional.empty());
+
+        assertEquals(0, find(Optional.of(List.of("Carrot")), Optional.empty(), Optional.empty()));
+        assertEquals(1, find(Optional.of(List.of("Meat")), Optional.empty(), Optional.empty()));
+
+        controller.deleteRecipe(saved.getId());
+        assertEquals(0, find(Optional.of(List.of("Meat")), Optional.empty(), Optional.empty()));
+    }
+
+    @Test
+    void givenRecipesInDatabase_whenRebuild_thenIndexMatchesDatabase() {
+        repository.save(veggiePie);
+        assertEquals(0, find(Optional.of(List.of("Carrot")), Optional.empty(), Optional.empty()));
+
+        index.rebuild();
+        assertEquals(1, find(Optional.of(List.of("Carrot")), Optional.empty(), Optional.empty()));
+    }
+
+    private int find(Optional<List<String>> includes, Optional<List<String>> excludes, Optional<List<String>> keywords) {
+        return controller.find(Optional.empty(), Optional.empty(), includes, excludes, keywords, Optional.empty(), Optional.empty()).getContent().size();
+    }
+}
@@ -0,0 +1,65 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.hateoas.EntityModel;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+import se.crashandlearn.abn_recipe.search.InstructionIndex;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "recipe.search.full-text.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:instructionindex"})
+class RecipeControllerInstructionIndexTest {
+    @Resource
+    RecipeController controller;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    InstructionIndex index;
+
+    private final Recipe veggiePie = Recipe.builder().title("Veggie pie").vegetarian(true).servings(4).ingredients(new HashSet<>(List.of("Flour", "Carrot"))).instruction("Add chopped carrots and put the pie in the oven").build();
+    private final Recipe meatPie = Recipe.builder().title("Meat pie").vegetarian(false).servings(4).ingredients(new HashSet<>(List.of("Flour", "Meat"))).instruction("Add chopped meat. Put in the oven, leave the oven door closed").build();
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+        index.rebuild();
+    }
+
+    @Test
+    void givenKeywords_whenFind_thenRecipesAreRankedByRelevance() {
+        controller.newRecipe(veggiePie);
+        controller.newRecipe(meatPie);
+
+        List<String> titles = controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("oven")), Optional.empty(), Optional.empty())
+                .getContent().stream().map(model -> model.getContent().getTitle()).toList();
+        assertEquals(List.of("Meat pie", "Veggie pie"), titles);
+    }
+
+    @Test
+    void givenKeywordsAndOtherFilters_whenFind_thenAllFiltersApply() {
+        controller.newRecipe(veggiePie);
+        controller.newRecipe(meatPie);
+
+        assertEquals(1, controller.find(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("oven")), Optional.empty(), Optional.empty()).getContent().size());
+        assertEquals(1, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Carrot")), Optional.of(List.of("chop*")), Optional.empty(), Optional.empty()).getContent().size());
+    }
+
+    @Test
+    void givenRecipeUpdated_whenFind_thenIndexIsInSync() {
+        Recipe saved = (Recipe) ((EntityModel<?>) controller.newRecipe(veggiePie).getBody()).getContent();
+        controller.updateRecipe(meatPie, saved.getId(), Optional.empty());
+
+        assertEquals(0, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("carrot")), Optional.empty(), Optional.empty()).getContent().size());
+        assertEquals(1, controller.find(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("chopped meat")), Optional.empty(), Optional.empty()).getContent().size());
+    }
+}
@@ -0,0 +1,97 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "management.endpoints.web.exposure.include=prometheus",
+        "spring.datasource.url=jdbc:h2:mem:metrics"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class RecipeControllerMetricsTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    MeterRegistry meterRegistry;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+        meterRegistry.clear();
+    }
+
+    @Test
+    void givenFilteredSearch_whenFind_thenTimedByFilterShape() throws Exception {
+        repository.save(Recipe.builder().title("Pie").vegetarian(true).servings(4).ingredients(Set.of("Apple", "Flour")).instruction("Bake").build());
+        repository.save(Recipe.builder().title("Steak").vegetarian(false).servings(2).ingredients(Set.of("Beef")).instruction("Fry").build());
+
+        mvc.perform(get("/recipes?vegetarian=true&includesIngredients=Apple,Flour&instructionKeywords=Bake"))
+                .andExpect(status().isOk());
+
+        assertEquals(1, meterRegistry.get("recipe.requests")
+                .tag("handler", "find")
+                .tag("filter.vegetarian", "true")
+                .tag("filter.servings", "false")
+                .tag("filter.includes", "2")
+                .tag("filter.excludes", "0")
+                .tag("filter.keywords", "1")
+                .timer().count());
+        assertEquals(2, meterRegistry.get("recipe.requests.statements").tag("handler", "find").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("recipe.find").tag("page", "all").tag("filter.includes", "2").timer().count());
+        assertEquals(1, meterRegistry.get("recipe.find.results").tag("page", "all").summary().totalAmount());
+    }
+
+    @Test
+    void givenManyTerms_whenFind_thenTermCountIsBounded() throws Exception {
+        mvc.perform(get("/recipes?excludesIngredients=A&excludesIngredients=B&excludesIngredients=C&excludesIngredients=D"))
+                .andExpect(status().isOk());
+
+        assertEquals(1, meterRegistry.get("recipe.requests").tag("filter.excludes", "3+").timer().count());
+    }
+
+    @Test
+    void givenCreate_whenTimed_thenNotTaggedWithFilterShape() throws Exception {
+        mvc.perform(post("/recipes?vegetarian=true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Pie\",\"vegetarian\":true,\"servings\":4,\"ingredients\":[\"Apple\"],\"instruction\":\"Bake\"}"))
+                .andExpect(status().isCreated());
+
+        Timer timer = meterRegistry.get("recipe.requests").tag("handler", "newRecipe").timer();
+        assertEquals(1, timer.count());
+        assertNull(timer.getId().getTag("filter.vegetarian"));
+    }
+
+    @Test
+    void givenRequests_whenScraped_thenPrometheusHistogramsWithoutFilterValues() throws Exception {
+        mvc.perform(get("/recipes?includesIngredients=Secret")).andExpect(status().isOk());
+
+        mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("recipe_requests_seconds_bucket{")))
+                .andExpect(content().string(containsString("recipe_find_results_bucket{")))
+                .andExpect(content().string(not(containsString("Secret"))));
+    }
+}
@@ -4,22 +4,28 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.json.JacksonTester;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.crashandlearn.abn_recipe.bulk.RecipeImporter;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
 import se.crashandlearn.abn_recipe.exception.RecipeControllerAdvice;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
 import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeField;
 import se.crashandlearn.abn_recipe.repository.RecipeRepository;
 
 import java.util.Collections;
+import java.util.function.Consumer;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -29,6 +35,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.BDDMockito.given;
 
@@ -39,10 +48,21 @@ public class RecipeControllerMvcTest {
     private RecipeRepository recipeRepository;
     @Spy
     private RecipeModelAssembler assembler;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+    @Mock
+    private RecipeImporter importer;
+    @Mock
+    private RecipeChangeLog changeLog;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private IngredientDictionary dictionary;
 
     private JacksonTester<Recipe> jsonRecipe;
 
-    @InjectMocks
     private RecipeController controller;
 
     private MockMvc mvc;
@@ -55,6 +75,7 @@ public class RecipeControllerMvcTest {
     @BeforeEach
     public void setup() {
         JacksonTester.initFields(this, new ObjectMapper());
+        controller = new RecipeController(recipeRepository, assembler, eventPublisher, objectMapper, importer, changeLog, transactionManager, dictionary, Optional.empty());
 
         mvc = MockMvcBuilders.standaloneSetup(controller)
                 .setControllerAdvice(new RecipeControllerAdvice())
@@ -183,7 +204,7 @@ public class RecipeControllerMvcTest {
     @Test
     public void whenPassingVegetarianFilterArguments_thenParametersAreSentToQuery() throws Exception {
         // given
-        given(recipeRepository.findFiltered(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()))
+        given(recipeRepository.findFiltered(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Integer.MAX_VALUE, RecipeField.ALL))
                 .willReturn(Collections.emptyList());
 
         // when
@@ -199,7 +220,7 @@ public class RecipeControllerMvcTest {
     @Test
     public void whenPassingServingsFilterArguments_thenParametersAreSentToQuery() throws Exception {
         // given
-        given(recipeRepository.findFiltered(Optional.empty(), Optional.of(2), Optional.empty(), Optional.empty(), Optional.empty()))
+        given(recipeRepository.findFiltered(Optional.empty(), Optional.of(2), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Integer.MAX_VALUE, RecipeField.ALL))
                 .willReturn(Collections.emptyList());
 
         // when
@@ -216,7 +237,7 @@ public class RecipeControllerMvcTest {
     @Test
     public void whenPassingIncludesIngredientFilterArguments_thenParametersAreSentToQuery() throws Exception {
         // given
-        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("carrot", "onion")), Optional.empty(), Optional.empty()))
+        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("carrot", "onion")), Optional.empty(), Optional.empty(), Optional.empty(), Integer.MAX_VALUE, RecipeField.ALL))
                 .willReturn(Collections.emptyList());
 
         // when
@@ -233,7 +254,7 @@ public class RecipeControllerMvcTest {
     @Test
     public void whenPassingExcludesIngredientFilterArguments_thenParametersAreSentToQuery() throws Exception {
         // given
-        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("carrot", "onion")), Optional.empty()))
+        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("carrot", "onion")), Optional.empty(), Optional.empty(), Integer.MAX_VALUE, RecipeField.ALL))
                 .willReturn(Collections.emptyList());
 
         // when
@@ -250,7 +271,7 @@ public class RecipeControllerMvcTest {
     @Test
     public void whenPassingInstructionKeywordsFilterArguments_thenParametersAreSentToQuery() throws Exception {
         // given
-        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("oven", "chop"))))
+        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("oven", "chop")), Optional.empty(), Integer.MAX_VALUE, RecipeField.ALL))
                 .willReturn(Collections.emptyList());
 
         // when
@@ -267,7 +288,7 @@ public class RecipeControllerMvcTest {
     @Test
     public void whenPassingMultipleFilterArguments_thenParametersAreSentToQuery() throws Exception {
         // given
-        given(recipeRepository.findFiltered(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("oven", "chop"))))
+        given(recipeRepository.findFiltered(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("oven", "chop")), Optional.empty(), Integer.MAX_VALUE, RecipeField.ALL))
                 .willReturn(Collections.emptyList());
 
         // when
@@ -280,4 +301,65 @@ public class RecipeControllerMvcTest {
         assertEquals(HttpStatus.OK.value(), response.getStatus());
         assertTrue(response.getContentAsString().contains("\"href\":\"http://localhost/recipes?vegetarian=true&instructionKeywords=oven&instructionKeywords=chop"));
     }
+
+    @Test
+    public void whenPassingLimit_thenPageWithNextLinkIsReturned() throws Exception {
+        // given
+        given(recipeRepository.findFiltered(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(2L), 2, RecipeField.ALL))
+                .willReturn(List.of(pumpkinPieWithId, applePieWithId));
+
+        // when
+        MockHttpServletResponse response = mvc.perform(
+                        get("/recipes?vegetarian=true&limit=2&after=2")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // then
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertTrue(response.getContentAsString().contains("\"href\":\"http://localhost/recipes?vegetarian=true&limit=2&after=2\""));
+        assertTrue(response.getContentAsString().contains("{\"rel\":\"next\",\"href\":\"http://localhost/recipes?vegetarian=true&limit=2&after=3\"}"));
+    }
+
+    @Test
+    public void whenLastPageIsReturned_thenThereIsNoNextLink() throws Exception {
+        // given
+        given(recipeRepository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), 5, RecipeField.ALL))
+                .willReturn(List.of(pumpkinPieWithId));
+
+        // when
+        MockHttpServletResponse response = mvc.perform(
+                        get("/recipes?limit=5")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        // then
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertTrue(response.getContentAsString().contains(pumpkinPieWithId.getTitle()));
+        assertTrue(!response.getContentAsString().contains("\"rel\":\"next\""));
+    }
+
+    @Test
+    public void whenAcceptingNdjson_thenRecipesAreStreamedOnePerLine() throws Exception {
+        // given
+        doAnswer(invocation -> {
+            Consumer<Recipe> action = invocation.getArgument(5);
+            action.accept(pumpkinPieWithId);
+            action.accept(applePieWithId);
+            return null;
+        }).when(recipeRepository).scrollFiltered(any(), any(), any(), any(), any(), any());
+
+        // when
+        MockHttpServletResponse response = mvc.perform(asyncDispatch(mvc.perform(
+                        get("/recipes")
+                                .accept(RecipeController.APPLICATION_NDJSON_VALUE))
+                .andReturn()))
+                .andReturn().getResponse();
+
+        // then
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(pumpkinPieWithId, jsonRecipe.parseObject(lines[0]));
+        assertEquals(applePieWithId, jsonRecipe.parseObject(lines[1]));
+    }
 }
@@ -0,0 +1,73 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.ingredient.IngredientDictionary;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:patch")
+@AutoConfigureMockMvc
+class RecipeControllerPatchTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    IngredientDictionary dictionary;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenPatch_whenIngredientsAddedAndRemoved_thenOtherFieldsAreKept() throws Exception {
+        Recipe saved = repository.save(Recipe.builder().title("Pie").vegetarian(true).servings(2).ingredients(Set.of("Apple", "Flour")).instruction("Bake").build());
+
+        mvc.perform(patch("/recipes/" + saved.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"servings": 6, "addIngredients": ["Cinnamon"], "removeIngredients": ["APPLE"]}"""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(jsonPath("$.servings").value(6))
+                .andExpect(jsonPath("$.title").value("Pie"));
+
+        Recipe patched = repository.findById(saved.getId()).orElseThrow();
+        assertEquals(6, patched.getServings());
+        assertEquals("Bake", patched.getInstruction());
+        assertEquals(Set.of("flour", "cinnamon"), patched.getIngredients());
+    }
+
+    @Test
+    void givenStaleETagOrMissingRecipe_whenPatch_thenRecipeIsNotChanged() throws Exception {
+        Recipe saved = repository.save(Recipe.builder().title("Pie").servings(2).ingredients(Set.of("Apple")).instruction("Bake").build());
+
+        mvc.perform(patch("/recipes/" + saved.getId()).header(HttpHeaders.IF_MATCH, "\"3\"").contentType(MediaType.APPLICATION_JSON).content("{\"servings\": 6, \"addIngredients\": [\"Stale\"]}"))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(patch("/recipes/" + (saved.getId() + 1000)).contentType(MediaType.APPLICATION_JSON).content("{\"servings\": 6, \"addIngredients\": [\"Missing\"]}"))
+                .andExpect(status().isNotFound());
+        mvc.perform(patch("/recipes/" + saved.getId()).header(HttpHeaders.IF_MATCH, "\"0\"").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""));
+
+        assertEquals(2, repository.findById(saved.getId()).orElseThrow().getServings());
+        assertEquals(Optional.empty(), dictionary.find("Stale"));
+        assertEquals(Optional.empty(), dictionary.find("Missing"));
+    }
+}
@@ -0,0 +1,64 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:projection")
+@AutoConfigureMockMvc
+class RecipeControllerProjectionTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenFields_whenFind_thenOnlyFieldsAndLinksAreReturned() throws Exception {
+        repository.save(Recipe.builder().title("Pie").servings(2).ingredients(Set.of("Apple")).instruction("Bake").build());
+
+        mvc.perform(get("/recipes?fields=title"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$._embedded.recipeList[0].id").exists())
+                .andExpect(jsonPath("$._embedded.recipeList[0].title").value("Pie"))
+                .andExpect(jsonPath("$._embedded.recipeList[0].servings").doesNotExist())
+                .andExpect(jsonPath("$._embedded.recipeList[0].ingredients").doesNotExist())
+                .andExpect(jsonPath("$._embedded.recipeList[0].instruction").doesNotExist())
+                .andExpect(jsonPath("$._embedded.recipeList[0]._links.self.href").exists())
+                .andExpect(jsonPath("$._links.self.href", containsString("fields=title")));
+    }
+
+    @Test
+    void givenFields_whenFindPage_thenNextPageKeepsFields() throws Exception {
+        repository.save(Recipe.builder().title("Pie").servings(2).ingredients(Set.of("Apple")).instruction("Bake").build());
+        repository.save(Recipe.builder().title("Cake").servings(4).ingredients(Set.of("Flour")).instruction("Bake").build());
+
+        mvc.perform(get("/recipes?limit=1&fields=id&fields=servings"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$._embedded.recipeList[0].servings").value(2))
+                .andExpect(jsonPath("$._embedded.recipeList[0].title").doesNotExist())
+                .andExpect(jsonPath("$._links.next.href", containsString("fields=id&fields=servings")));
+    }
+
+    @Test
+    void givenUnknownField_whenFind_thenBadRequest() throws Exception {
+        mvc.perform(get("/recipes?fields=title,calories"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,97 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.hateoas.EntityModel;
+import se.crashandlearn.abn_recipe.cache.RecipeQueryCache;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "recipe.query-cache.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:querycache"})
+class RecipeControllerQueryCacheTest {
+    @Resource
+    RecipeController controller;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Resource
+    RecipeQueryCache queryCache;
+
+    private final Recipe veggiePie = Recipe.builder().title("Veggie pie").vegetarian(true).servings(4).ingredients(new HashSet<>(List.of("Flour", "Carrot"))).instruction("Add chopped Carrot").build();
+    private final Recipe meatPie = Recipe.builder().title("Meat pie").vegetarian(false).servings(4).ingredients(new HashSet<>(List.of("Flour", "Meat"))).instruction("Add chopped Meat").build();
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenSameFiltersInOtherOrder_whenFind_thenResultIsCached() {
+        controller.newRecipe(veggiePie);
+        controller.newRecipe(meatPie);
+        double hits = hits();
+
+        assertEquals(1, find(List.of("Flour", "Carrot")));
+        assertEquals(1, find(List.of("Carrot", "Flour", "Carrot")));
+
+        assertEquals(hits + 1, hits());
+    }
+
+    @Test
+    void givenCachedResult_whenRecipesChange_thenResultIsNotStale() {
+        Recipe saved = (Recipe) ((EntityModel<?>) controller.newRecipe(veggiePie).getBody()).getContent();
+        assertEquals(1, find(List.of("Flour")));
+
+        controller.newRecipe(meatPie);
+        assertEquals(2, find(List.of("Flour")));
+
+        controller.updateRecipe(Recipe.builder().title("Carrot cake").vegetarian(true).servings(8).ingredients(new HashSet<>(List.of("Sugar", "Carrot"))).build(), saved.getId(), Optional.empty());
+        assertEquals(1, find(List.of("Flour")));
+
+        controller.deleteRecipe(saved.getId());
+        assertEquals(0, find(List.of("Carrot")));
+    }
+
+    @Test
+    void givenCachedResult_whenPaging_thenPagesAreInIdOrder() {
+        Long first = ((Recipe) ((EntityModel<?>) controller.newRecipe(veggiePie).getBody()).getContent()).getId();
+        Long second = ((Recipe) ((EntityModel<?>) controller.newRecipe(meatPie).getBody()).getContent()).getId();
+
+        assertEquals(List.of(first), page(Optional.empty()));
+        assertEquals(List.of(second), page(Optional.of(first)));
+        assertEquals(List.of(), page(Optional.of(second)));
+    }
+
+    private int find(List<String> includes) {
+        return controller.find(Optional.empty(), Optional.empty(), Optional.of(includes), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).getContent().size();
+    }
+
+    @Test
+    void givenSearchOfMissingEntry_whenItUsesTheCache_thenItIsNotBlockedByTheCache() {
+        RecipeQueryCache.Matches matches = queryCache.get(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(),
+                () -> queryCache.get(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), () -> List.of(1L)).ids());
+
+        assertEquals(List.of(1L), matches.ids());
+    }
+
+    private List<Long> page(Optional<Long> after) {
+        return controller.findPage(Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty(), 1, after, Optional.empty(), Optional.empty())
+                .getContent().stream().map(recipe -> recipe.getContent().getId()).toList();
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "recipeQueries").tag("result", "hit").functionCounter().count();
+    }
+}
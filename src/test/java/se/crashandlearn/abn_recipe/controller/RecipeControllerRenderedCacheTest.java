@@ -0,0 +1,92 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "recipe.links.precomputed=true",
+        "recipe.links.cache-rendered=true",
+        "spring.datasource.url=jdbc:h2:mem:renderedcache"})
+@AutoConfigureMockMvc
+class RecipeControllerRenderedCacheTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Resource
+    RenderedRecipeCache renderedCache;
+    @Resource
+    ObjectMapper objectMapper;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenRenderedRecipe_whenGetAgain_thenSameHalRepresentationIsReturned() throws Exception {
+        Recipe pie = repository.save(Recipe.builder().title("Pumpkin pie").vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Flour", "Pumpkin"))).instruction("Bake").build());
+        double hits = hits();
+
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(get("/recipes/" + pie.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.title").value("Pumpkin pie"))
+                    .andExpect(jsonPath("$._links.self.href").value("http://localhost/recipes/" + pie.getId()))
+                    .andExpect(jsonPath("$._links.recipes.href").value("http://localhost/recipes"));
+        }
+        mvc.perform(get("/recipes"))
+                .andExpect(jsonPath("$._embedded.recipeList[0].title").value("Pumpkin pie"))
+                .andExpect(jsonPath("$._embedded.recipeList[0]._links.self.href").value("http://localhost/recipes/" + pie.getId()));
+
+        assertEquals(hits + 2, hits());
+    }
+
+    @Test
+    void givenRenderedRecipe_whenUpdated_thenNewRepresentationIsReturned() throws Exception {
+        Recipe pie = repository.save(Recipe.builder().title("Pumpkin pie").vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Flour", "Pumpkin"))).instruction("Bake").build());
+        mvc.perform(get("/recipes/" + pie.getId())).andExpect(jsonPath("$.title").value("Pumpkin pie"));
+
+        mvc.perform(put("/recipes/" + pie.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Apple pie\",\"vegetarian\":true,\"servings\":2,\"ingredients\":[\"Flour\",\"Apple\"],\"instruction\":\"Bake\"}"))
+                .andExpect(status().isCreated());
+
+        mvc.perform(get("/recipes/" + pie.getId())).andExpect(jsonPath("$.title").value("Apple pie"));
+    }
+
+    @Test
+    void givenRecipeWithSameHashCode_whenNewerVersionRendered_thenItIsNotServedFromCache() throws Exception {
+        // The instructions are chosen so that both versions have the same hash code
+        Recipe rendered = Recipe.builder().id(-1L).title("Pie").instruction("mmmmm").version(0).build();
+        Recipe updated = Recipe.builder().id(-1L).title("Pie").instruction("`jVjZ").version(1).build();
+        assertEquals(rendered.hashCode(), updated.hashCode());
+
+        assertEquals("mmmmm", renderedCache.get(rendered, "http://localhost", objectMapper, rendered::getInstruction));
+        assertEquals("`jVjZ", renderedCache.get(updated, "http://localhost", objectMapper, updated::getInstruction));
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "renderedRecipes").tag("result", "hit").functionCounter().count();
+    }
+}
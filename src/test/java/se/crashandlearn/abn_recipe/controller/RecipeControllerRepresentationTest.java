@@ -0,0 +1,123 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.compression.enabled=true",
+        "server.compression.mime-types=application/json,application/hal+json,application/x-ndjson,application/cbor",
+        "server.compression.min-response-size=2KB",
+        "spring.datasource.url=jdbc:h2:mem:representation"})
+class RecipeControllerRepresentationTest {
+    @LocalServerPort
+    int port;
+    @Resource
+    RecipeRepository repository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenLargeResponse_whenGzipAccepted_thenCompressed() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            repository.save(Recipe.builder().title("Pie " + i).servings(4).ingredients(Set.of("Apple", "Flour")).instruction("Knead the dough and bake it. ".repeat(10)).build());
+        }
+
+        HttpResponse<byte[]> page = get("/recipes", "application/hal+json", "gzip");
+        assertEquals(200, page.statusCode());
+        assertEquals(Optional.of("gzip"), page.headers().firstValue(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(new String(new GZIPInputStream(new ByteArrayInputStream(page.body())).readAllBytes()).contains("Pie 19"));
+
+        HttpResponse<byte[]> small = get("/recipes?includesIngredients=Pumpkin", "application/hal+json", "gzip");
+        assertEquals(Optional.empty(), small.headers().firstValue(HttpHeaders.CONTENT_ENCODING));
+
+        HttpResponse<byte[]> stream = get("/recipes", "application/x-ndjson", "gzip");
+        assertEquals(Optional.of("gzip"), stream.headers().firstValue(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(20, new String(new GZIPInputStream(new ByteArrayInputStream(stream.body())).readAllBytes()).lines().count());
+    }
+
+    @Test
+    void givenCborAccepted_whenGetRecipe_thenSameHalDocumentInCbor() throws Exception {
+        Recipe saved = repository.save(Recipe.builder().title("Pie").servings(4).ingredients(Set.of("Apple")).instruction("Bake").build());
+
+        HttpResponse<byte[]> response = get("/recipes/" + saved.getId(), "application/cbor", "identity");
+        assertEquals(200, response.statusCode());
+        assertEquals(Optional.of("application/cbor"), response.headers().firstValue(HttpHeaders.CONTENT_TYPE));
+
+        JsonNode recipe = new ObjectMapper(new CBORFactory()).readTree(response.body());
+        assertEquals("Pie", recipe.get("title").asText());
+        assertEquals("apple", recipe.get("ingredients").get(0).asText());
+        assertTrue(recipe.get("_links").get("self").get("href").asText().endsWith("/recipes/" + saved.getId()));
+
+        HttpResponse<byte[]> page = get("/recipes?limit=10", "application/cbor", "identity");
+        assertEquals(saved.getId(), new ObjectMapper(new CBORFactory()).readTree(page.body())
+                .get("_embedded").get("recipeList").get(0).get("id").asLong());
+    }
+
+    @Test
+    void givenJsonAndCborShareETag_whenRecipeReadOrWritten_thenVariesByAccept() throws Exception {
+        Recipe saved = repository.save(Recipe.builder().title("Pie").servings(4).ingredients(Set.of("Apple")).instruction("Bake").build());
+
+        HttpResponse<byte[]> cbor = get("/recipes/" + saved.getId(), "application/cbor", "identity");
+        assertEquals(Optional.of(HttpHeaders.ACCEPT), cbor.headers().firstValue(HttpHeaders.VARY));
+
+        HttpResponse<byte[]> notModified = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/recipes/" + saved.getId()))
+                        .header(HttpHeaders.ACCEPT, "application/hal+json")
+                        .header(HttpHeaders.IF_NONE_MATCH, cbor.headers().firstValue(HttpHeaders.ETAG).orElseThrow())
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(304, notModified.statusCode());
+        assertEquals(Optional.of(HttpHeaders.ACCEPT), notModified.headers().firstValue(HttpHeaders.VARY));
+
+        String body = "{\"title\":\"Pear pie\",\"servings\":4,\"ingredients\":[\"Pear\"],\"instruction\":\"Bake\"}";
+        HttpResponse<byte[]> put = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/recipes/" + saved.getId()))
+                        .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(201, put.statusCode());
+        assertEquals(Optional.of(HttpHeaders.ACCEPT), put.headers().firstValue(HttpHeaders.VARY));
+
+        HttpResponse<byte[]> patch = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/recipes/" + saved.getId()))
+                        .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"servings\":6}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, patch.statusCode());
+        assertEquals(Optional.of(HttpHeaders.ACCEPT), patch.headers().firstValue(HttpHeaders.VARY));
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept, String encoding) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                        .header(HttpHeaders.ACCEPT, accept)
+                        .header(HttpHeaders.ACCEPT_ENCODING, encoding)
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,56 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Every write with a new ingredient must succeed with a single connection, so none of them waits for a
+ * second one while its transaction holds the first. Flyway migrates on connections of its own.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:singleconnection;DB_CLOSE_DELAY=-1",
+        "spring.flyway.url=jdbc:h2:mem:singleconnection;DB_CLOSE_DELAY=-1",
+        "spring.flyway.user=username",
+        "spring.jpa.open-in-view=false",
+        "spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=1000"})
+@AutoConfigureMockMvc
+class RecipeControllerSingleConnectionTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenNewIngredients_whenRecipeWritten_thenNoSecondConnectionIsNeeded() throws Exception {
+        String location = mvc.perform(post("/recipes").contentType(MediaType.APPLICATION_JSON).content("""
+                        {"title": "Pie", "vegetarian": true, "servings": 2, "ingredients": ["Quince"], "instruction": "Bake"}"""))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getHeader("Location");
+
+        mvc.perform(put(location).contentType(MediaType.APPLICATION_JSON).content("""
+                        {"title": "Pie", "vegetarian": true, "servings": 2, "ingredients": ["Medlar"], "instruction": "Bake"}"""))
+                .andExpect(status().isCreated());
+        mvc.perform(patch(location).contentType(MediaType.APPLICATION_JSON).content("""
+                        {"addIngredients": ["Sloe"]}"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ingredients.length()").value(2));
+    }
+}
@@ -0,0 +1,76 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+import se.crashandlearn.abn_recipe.slowquery.SlowQueryLog;
+
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "recipe.slow-query.enabled=true",
+        "recipe.slow-query.threshold-ms=0",
+        "recipe.slow-query.capacity=2",
+        "management.endpoints.web.exposure.include=slowqueries",
+        "spring.datasource.url=jdbc:h2:mem:slowquery"})
+@AutoConfigureMockMvc
+class RecipeControllerSlowQueryTest {
+    @Resource
+    MockMvc mvc;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    SlowQueryLog slowQueryLog;
+
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+        slowQueryLog.clear();
+    }
+
+    @Test
+    void givenSlowSearch_whenSlowQueriesRead_thenSqlParametersRowsAndPlanAreListed() throws Exception {
+        repository.save(Recipe.builder().title("Pie").vegetarian(true).servings(4).ingredients(Set.of("Apple", "Flour")).instruction("Bake").build());
+        repository.save(Recipe.builder().title("Steak").vegetarian(false).servings(2).ingredients(Set.of("Beef")).instruction("Fry").build());
+
+        mvc.perform(get("/recipes?includesIngredients=Apple&excludesIngredients=Beef")).andExpect(status().isOk());
+
+        mvc.perform(get("/actuator/slowqueries"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].filters.includesIngredients[0]").value("apple"))
+                .andExpect(jsonPath("$[0].statements", hasSize(2)))
+                .andExpect(jsonPath("$[0].statements[0].sql", containsString("recipe_ingredient")))
+                .andExpect(jsonPath("$[0].statements[0].parameters", hasItem("0")))
+                .andExpect(jsonPath("$[0].statements[0].rows").value(1))
+                .andExpect(jsonPath("$[0].statements[0].plan", containsString("PUBLIC.")))
+                .andExpect(jsonPath("$[0].statements[1].rows").value(2));
+    }
+
+    @Test
+    void givenMoreSearchesThanCapacity_whenSlowQueriesRead_thenOnlyTheMostRecentAreKept() throws Exception {
+        mvc.perform(get("/recipes?servings=1")).andExpect(status().isOk());
+        mvc.perform(get("/recipes?servings=2")).andExpect(status().isOk());
+        mvc.perform(get("/recipes?servings=3")).andExpect(status().isOk());
+
+        mvc.perform(get("/actuator/slowqueries"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].filters.servings").value(3))
+                .andExpect(jsonPath("$[1].filters.servings").value(2));
+
+        mvc.perform(delete("/actuator/slowqueries")).andExpect(status().is2xxSuccessful());
+        mvc.perform(get("/actuator/slowqueries")).andExpect(jsonPath("$", hasSize(0)));
+    }
+}
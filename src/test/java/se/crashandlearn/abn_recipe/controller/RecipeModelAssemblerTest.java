@@ -0,0 +1,45 @@
+package se.crashandlearn.abn_recipe.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecipeModelAssemblerTest {
+
+    private final Recipe pumpkinPie = Recipe.builder().id(3L).title("Pumpkin pie").build();
+
+    @BeforeEach
+    void setup() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/recipes");
+        request.setServerName("recipes.example.com");
+        request.setServerPort(8443);
+        request.setScheme("https");
+        request.setContextPath("/app");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void cleanup() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void givenPrecomputedLinks_whenToModel_thenLinksAreSameAsFromLinkBuilder() {
+        RecipeModelAssembler assembler = new RecipeModelAssembler();
+        EntityModel<Recipe> built = assembler.toModel(pumpkinPie);
+
+        ReflectionTestUtils.setField(assembler, "precomputedLinks", true);
+        EntityModel<Recipe> precomputed = assembler.toModel(pumpkinPie);
+
+        assertEquals("https://recipes.example.com:8443/app/recipes/3", precomputed.getRequiredLink("self").getHref());
+        assertEquals(built.getLinks().toString(), precomputed.getLinks().toString());
+    }
+}
@@ -0,0 +1,90 @@
+package se.crashandlearn.abn_recipe.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.crashandlearn.abn_recipe.ingredient.IngredientNormalizer;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeFacets;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecipeIngredientIndexTest {
+
+    private RecipeIngredientIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new RecipeIngredientIndex(new IngredientNormalizer(List.of("aubergine=eggplant")));
+        index.put(Recipe.builder().id(1L).vegetarian(true).servings(1).ingredients(new HashSet<>(List.of("Flour", "Carrot", "Broccoli"))).build());
+        index.put(Recipe.builder().id(2L).vegetarian(true).servings(4).ingredients(new HashSet<>(List.of("Flour", "Carrot", "Broccoli"))).build());
+        index.put(Recipe.builder().id(3L).vegetarian(false).servings(1).ingredients(new HashSet<>(List.of("Flour", "Meat"))).build());
+        index.put(Recipe.builder().id(4L).vegetarian(false).servings(4).ingredients(new HashSet<>(List.of("Flour", "Meat"))).build());
+        index.put(Recipe.builder().id(5L).vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Flour", "Mushroom"))).build());
+    }
+
+    @Test
+    void givenNoFilters_whenMatch_thenReturnAllIds() {
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5}, index.match(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).toArray());
+    }
+
+    @Test
+    void givenVegetarianAndServings_whenMatch_thenReturnIntersection() {
+        assertArrayEquals(new long[]{2, 5}, index.match(Optional.of(true), Optional.of(2), Optional.empty(), Optional.empty()).toArray());
+        assertArrayEquals(new long[]{3, 4}, index.match(Optional.of(false), Optional.empty(), Optional.empty(), Optional.empty()).toArray());
+    }
+
+    @Test
+    void givenIngredients_whenMatch_thenIncludeAllAndExcludeAny() {
+        assertArrayEquals(new long[]{1, 2}, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("Carrot", "Flour")), Optional.empty()).toArray());
+        assertArrayEquals(new long[]{1, 2}, index.match(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Mushroom", "Meat"))).toArray());
+        assertArrayEquals(new long[]{}, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("Pumpkin")), Optional.empty()).toArray());
+    }
+
+    @Test
+    void givenRecipeUpdatedOrRemoved_whenMatch_thenOldEntriesAreGone() {
+        index.put(Recipe.builder().id(3L).vegetarian(true).servings(6).ingredients(new HashSet<>(List.of("Pumpkin"))).build());
+        index.remove(4L);
+
+        assertArrayEquals(new long[]{}, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("Meat")), Optional.empty()).toArray());
+        assertArrayEquals(new long[]{3}, index.match(Optional.of(true), Optional.of(5), Optional.of(List.of("Pumpkin")), Optional.empty()).toArray());
+    }
+
+    @Test
+    void givenLastRecipeOfIngredientUpdated_whenFacets_thenIngredientAndServingsAreGone() {
+        index.put(Recipe.builder().id(5L).vegetarian(true).servings(4).ingredients(new HashSet<>(List.of("Flour", "Carrots"))).build());
+        index.remove(1L);
+
+        RecipeFacets facets = index.facets(index.match(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()), 10);
+
+        assertEquals(Map.of(1, 1L, 4, 3L), facets.servings());
+        assertEquals(List.of(new RecipeFacets.IngredientCount("flour", 4), new RecipeFacets.IngredientCount("meat", 2),
+                new RecipeFacets.IngredientCount("broccoli", 1), new RecipeFacets.IngredientCount("carrot", 1),
+                new RecipeFacets.IngredientCount("carrots", 1)), facets.ingredients());
+        assertArrayEquals(new long[]{2, 5}, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("Carrot")), Optional.empty()).toArray());
+    }
+
+    @Test
+    void givenPluralsAndSynonyms_whenMatch_thenEveryVariantMatches() {
+        index.put(Recipe.builder().id(6L).vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Carrots", "Eggplant"))).build());
+
+        assertArrayEquals(new long[]{1, 2, 6}, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("carrot")), Optional.empty()).toArray());
+        assertArrayEquals(new long[]{6}, index.match(Optional.empty(), Optional.empty(), Optional.of(List.of("Aubergines", "CARROTS")), Optional.empty()).toArray());
+        assertArrayEquals(new long[]{3, 4, 5}, index.match(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("carrots"))).toArray());
+    }
+
+    @Test
+    void givenMatches_whenFacets_thenCountedPerBitmap() {
+        RecipeFacets facets = index.facets(index.match(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Mushroom"))), 2);
+
+        assertEquals(4, facets.count());
+        assertEquals(2, facets.vegetarian());
+        assertEquals(Map.of(1, 2L, 4, 2L), facets.servings());
+        assertEquals(List.of(new RecipeFacets.IngredientCount("flour", 4), new RecipeFacets.IngredientCount("broccoli", 2)), facets.ingredients());
+    }
+}
@@ -0,0 +1,84 @@
+package se.crashandlearn.abn_recipe.ingredient;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "recipe.ingredients.synonyms=aubergine=eggplant",
+        "spring.datasource.url=jdbc:h2:mem:ingredientdictionary"})
+class IngredientDictionaryTest {
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    IngredientDictionary dictionary;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenNamesDifferingInCaseAndWhitespace_whenAdded_thenTheyShareOneId() {
+        int id = dictionary.id("Olive oil");
+
+        assertEquals(id, dictionary.id("  olive   OIL "));
+        assertEquals(Optional.of(id), dictionary.find("OLIVE\tOil"));
+        assertEquals("olive oil", dictionary.name(id));
+    }
+
+    @Test
+    void givenSavedRecipes_whenFilteredWithOtherCasing_thenMatchingRecipesAreFound() {
+        repository.save(Recipe.builder().title("Pie").vegetarian(true).servings(2).ingredients(Set.of("Apple", "Flour")).instruction("Bake").build());
+        repository.save(Recipe.builder().title("Steak").vegetarian(false).servings(2).ingredients(Set.of(" beef")).instruction("Fry").build());
+
+        List<Recipe> recipes = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("APPLE")), Optional.of(List.of("Beef")), Optional.empty());
+
+        assertEquals(List.of("Pie"), recipes.stream().map(Recipe::getTitle).toList());
+        assertEquals(Set.of("apple", "flour"), recipes.get(0).getIngredients());
+    }
+
+    @Test
+    void givenPluralsAndSynonyms_whenFiltered_thenEveryVariantMatches() {
+        repository.save(Recipe.builder().title("Mash").vegetarian(true).servings(2).ingredients(Set.of("Potatoes", "Butter")).instruction("Boil").build());
+        repository.save(Recipe.builder().title("Roast").vegetarian(true).servings(2).ingredients(Set.of("potato", "Aubergine")).instruction("Roast").build());
+
+        assertEquals(List.of("potato", "potatoes"), dictionary.variants("POTATO"));
+        assertEquals(List.of("aubergine"), dictionary.variants("eggplants"));
+        assertEquals(2, repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Potatoes")), Optional.empty(), Optional.empty()).size());
+        List<Recipe> recipes = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("potato", "eggplants")), Optional.empty(), Optional.empty());
+        assertEquals(List.of("Roast"), recipes.stream().map(Recipe::getTitle).toList());
+        recipes = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Eggplant")), Optional.empty());
+        assertEquals(List.of("Mash"), recipes.stream().map(Recipe::getTitle).toList());
+    }
+
+    @Test
+    void givenUnknownIngredient_whenFiltered_thenNothingIsFoundAndDictionaryIsUnchanged() {
+        repository.save(Recipe.builder().title("Pie").vegetarian(true).servings(2).ingredients(Set.of("Apple")).instruction("Bake").build());
+        int size = dictionary.size();
+
+        assertTrue(repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Durian")), Optional.empty(), Optional.empty()).isEmpty());
+        assertEquals(1, repository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(List.of("Durian")), Optional.empty()).size());
+        assertEquals(size, dictionary.size());
+    }
+
+    @Test
+    void givenRecipesWithSameIngredient_whenRead_thenTheyShareOneNameInstance() {
+        repository.save(Recipe.builder().title("Pie").vegetarian(true).servings(2).ingredients(Set.of("Flour")).instruction("Bake").build());
+        repository.save(Recipe.builder().title("Bread").vegetarian(true).servings(2).ingredients(Set.of("FLOUR")).instruction("Bake").build());
+
+        List<Recipe> recipes = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+
+        assertEquals(2, recipes.size());
+        assertSame(recipes.get(0).getIngredients().iterator().next(), recipes.get(1).getIngredients().iterator().next());
+    }
+}
@@ -0,0 +1,38 @@
+package se.crashandlearn.abn_recipe.ingredient;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class IngredientNormalizerTest {
+
+    private final IngredientNormalizer normalizer = new IngredientNormalizer(List.of("aubergine=eggplant", "scallion=spring onion=green onion"));
+
+    @Test
+    void givenSingularAndPlural_whenNormalized_thenTheyAreTheSame() {
+        for (List<String> names : List.of(
+                List.of("potato", "Potatoes"),
+                List.of("berry", "berries"),
+                List.of("cookie", "cookies"),
+                List.of("pie", "pies"),
+                List.of("peach", "peaches"),
+                List.of("sauce", "sauces"),
+                List.of("cherry tomato", "Cherry  Tomatoes"))) {
+            assertEquals(normalizer.normalize(names.get(0)), normalizer.normalize(names.get(1)), names::toString);
+        }
+        assertEquals("asparagus", normalizer.normalize("Asparagus"));
+        assertEquals("hummus", normalizer.normalize("hummus"));
+        assertEquals("gas", normalizer.normalize("gas"));
+    }
+
+    @Test
+    void givenSynonyms_whenNormalized_thenTheyAreTheFirstOfTheirGroup() {
+        assertEquals("aubergine", normalizer.normalize("Eggplants"));
+        assertEquals("aubergine", normalizer.normalize("aubergines"));
+        assertEquals("scallion", normalizer.normalize("green onions"));
+        assertNotEquals(normalizer.normalize("onion"), normalizer.normalize("green onion"));
+    }
+}
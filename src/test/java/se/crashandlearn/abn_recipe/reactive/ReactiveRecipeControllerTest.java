@@ -0,0 +1,187 @@
+package se.crashandlearn.abn_recipe.reactive;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = {
+        "spring.main.web-application-type=reactive",
+        "spring.datasource.url=jdbc:h2:mem:reactive",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive",
+        "spring.r2dbc.password="})
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+class ReactiveRecipeControllerTest {
+    @Resource
+    WebTestClient client;
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    ReactiveRecipeRepository reactiveRepository;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    private Recipe recipe(String title, boolean vegetarian, int servings, String instruction, String... ingredients) {
+        return repository.save(Recipe.builder()
+                .title(title)
+                .vegetarian(vegetarian)
+                .servings(servings)
+                .instruction(instruction)
+                .ingredients(Set.of(ingredients))
+                .build());
+    }
+
+    @Test
+    void givenRecipes_whenFilteredOnAllFilters_thenReturnsMatchesAsHal() {
+        Recipe pie = recipe("Apple pie", true, 4, "Bake in the oven", "Apple", "Flour");
+        recipe("Apple salad", true, 2, "Mix", "Apple");
+        recipe("Steak", false, 4, "Fry in the pan", "Beef");
+        recipe("Pear pie", true, 6, "Bake in the oven", "Pear", "Flour", "Salmon");
+
+        client.get().uri("/recipes?vegetarian=true&servings=3&includesIngredients=Flour&excludesIngredients=Salmon&instructionKeywords=oven")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.parseMediaType("application/hal+json"))
+                .expectBody()
+                .jsonPath("$._embedded.recipeList.length()").isEqualTo(1)
+                .jsonPath("$._embedded.recipeList[0].title").isEqualTo("Apple pie")
+                .jsonPath("$._embedded.recipeList[0].ingredients.length()").isEqualTo(2)
+                .jsonPath("$._embedded.recipeList[0]._links.self.href").value(endsWith("/recipes/" + pie.getId()))
+                .jsonPath("$._links.self.href").exists();
+    }
+
+    @Test
+    void givenRecipes_whenStreamedAsNdjson_thenEveryRecipeIsOneLine() {
+        recipe("Apple pie", true, 4, "Bake", "Apple");
+        recipe("Steak", false, 4, "Fry", "Beef");
+        recipe("Salad", true, 1, "Mix", "Lettuce");
+
+        List<Recipe> recipes = client.get().uri("/recipes?vegetarian=true")
+                .accept(MediaType.parseMediaType(ReactiveRecipeController.APPLICATION_NDJSON_VALUE))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Recipe.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(Set.of("Apple pie", "Salad"), Set.copyOf(recipes.stream().map(Recipe::getTitle).toList()));
+    }
+
+    @Test
+    void givenFullPage_whenFindPage_thenLinksToNextPage() {
+        Recipe first = recipe("First", true, 1, "Mix", "Apple");
+        Recipe second = recipe("Second", true, 1, "Mix", "Apple");
+        recipe("Third", true, 1, "Mix", "Apple");
+
+        client.get().uri("/recipes?limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$._embedded.recipeList[0].id").isEqualTo(first.getId())
+                .jsonPath("$._embedded.recipeList[1].id").isEqualTo(second.getId())
+                .jsonPath("$._links.next.href").value(endsWith("/recipes?limit=2&after=" + second.getId()));
+    }
+
+    @Test
+    void givenNewRecipe_whenPostedUpdatedAndDeleted_thenDatabaseFollows() {
+        Recipe created = client.post().uri("/recipes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Pie\",\"vegetarian\":true,\"servings\":2,\"ingredients\":[\"Apple\"],\"instruction\":\"Bake\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Recipe.class)
+                .returnResult()
+                .getResponseBody();
+        assertEquals(Set.of("apple"), repository.findById(created.getId()).orElseThrow().getIngredients());
+
+        client.put().uri("/recipes/" + created.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Pear pie\",\"vegetarian\":true,\"servings\":2,\"ingredients\":[\"Pear\",\"Flour\"],\"instruction\":\"Bake\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody().jsonPath("$.id").isEqualTo(created.getId());
+        client.get().uri("/recipes/" + created.getId())
+                .exchange()
+                .expectBody()
+                .jsonPath("$.title").isEqualTo("Pear pie")
+                .jsonPath("$.ingredients.length()").isEqualTo(2);
+
+        client.delete().uri("/recipes/" + created.getId()).exchange().expectStatus().isOk();
+        client.get().uri("/recipes/" + created.getId()).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void givenETag_whenReadAndUpdated_thenConditionalAsOnServletStack() {
+        Recipe pie = recipe("Pie", true, 2, "Bake", "Apple");
+        String eTag = "\"" + pie.getVersion() + "\"";
+
+        client.get().uri("/recipes/" + pie.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, eTag);
+        client.get().uri("/recipes/" + pie.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        String update = "{\"title\":\"Pear pie\",\"vegetarian\":true,\"servings\":2,\"ingredients\":[\"Pear\"],\"instruction\":\"Bake\"}";
+        client.put().uri("/recipes/" + pie.getId())
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(update)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"" + (pie.getVersion() + 1) + "\"");
+        client.put().uri("/recipes/" + pie.getId())
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(update)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        assertEquals(pie.getVersion() + 1, repository.findById(pie.getId()).orElseThrow().getVersion());
+    }
+
+    @Test
+    void givenRecipeChangedSinceRead_whenUpdatedAtReadVersion_thenNothingIsWritten() {
+        Recipe pie = recipe("Pie", true, 2, "Bake", "Apple");
+        repository.save(repository.findById(pie.getId()).orElseThrow().toBuilder().title("Apple pie").build());
+
+        Recipe stale = Recipe.builder().title("Pear pie").servings(2).ingredients(Set.of("Pear")).build();
+        assertNull(reactiveRepository.update(pie.getId(), pie.getVersion(), stale).block());
+        assertEquals("Apple pie", repository.findById(pie.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    void givenRecipesSavedByBothStacks_whenListed_thenIdsDoNotCollide() {
+        Recipe jpa = recipe("Saved through JPA", true, 1, "Mix", "Apple");
+        client.post().uri("/recipes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"title\":\"Saved through R2DBC\",\"servings\":1,\"ingredients\":[]}")
+                .exchange()
+                .expectStatus().isCreated();
+        recipe("Saved through JPA again", true, 1, "Mix", "Apple");
+
+        assertEquals(3, repository.findAll().stream().map(Recipe::getId).distinct().count());
+        assertEquals(jpa.getId(), repository.findById(jpa.getId()).orElseThrow().getId());
+    }
+}
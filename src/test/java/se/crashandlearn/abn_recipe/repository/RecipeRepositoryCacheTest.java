@@ -0,0 +1,98 @@
+package se.crashandlearn.abn_recipe.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Resource;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.crashandlearn.abn_recipe.model.Recipe;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:recipecache",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+class RecipeRepositoryCacheTest {
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    EntityManagerFactory entityManagerFactory;
+    @Resource
+    MeterRegistry meterRegistry;
+    @Resource
+    PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+    private Recipe pumpkinPie;
+
+    @BeforeEach
+    void setup() {
+        pumpkinPie = repository.save(Recipe.builder().title("Pumpkin pie").vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Flour", "Pumpkin"))).instruction("Bake").build());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenRecipeWasRead_whenFindById_thenRecipeAndIngredientsAreReadFromCache() {
+        repository.findById(pumpkinPie.getId());
+        long statements = statistics.getPrepareStatementCount();
+
+        Recipe cached = repository.findById(pumpkinPie.getId()).orElseThrow();
+
+        assertEquals(statements, statistics.getPrepareStatementCount());
+        assertEquals(pumpkinPie.getIngredients(), cached.getIngredients());
+        assertTrue(meterRegistry.get("cache.gets").tag("cache", RecipeRepository.RECIPE_CACHE).tag("result", "hit").functionCounter().count() >= 1);
+    }
+
+    @Test
+    void givenRecipeIsCached_whenSaved_thenUpdatedRecipeIsReturned() {
+        repository.findById(pumpkinPie.getId());
+
+        Recipe applePie = Recipe.builder().id(pumpkinPie.getId()).title("Apple pie").vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Flour", "Apple"))).instruction("Bake").build();
+        repository.save(applePie);
+
+        Recipe found = repository.findById(pumpkinPie.getId()).orElseThrow();
+        assertEquals("Apple pie", found.getTitle());
+        assertEquals(applePie.getIngredients(), found.getIngredients());
+    }
+
+    @Test
+    void givenRecipeIsCached_whenDeleted_thenRecipeIsNotFound() {
+        repository.findById(pumpkinPie.getId());
+
+        repository.deleteById(pumpkinPie.getId());
+
+        assertTrue(repository.findById(pumpkinPie.getId()).isEmpty());
+    }
+
+    @Test
+    void givenRecipeReadWhileItIsSaved_whenCommitted_thenUpdatedRecipeIsReturned() {
+        repository.findById(pumpkinPie.getId());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            repository.save(Recipe.builder().id(pumpkinPie.getId()).title("Apple pie").vegetarian(true).servings(2).ingredients(new HashSet<>(List.of("Flour", "Apple"))).instruction("Bake").build());
+            // Another request reads the recipe between the save and the commit, and finds the committed one
+            Recipe concurrent = CompletableFuture.supplyAsync(() -> repository.findById(pumpkinPie.getId()).orElseThrow()).join();
+            assertEquals("Pumpkin pie", concurrent.getTitle());
+        });
+
+        Recipe found = repository.findById(pumpkinPie.getId()).orElseThrow();
+        assertEquals("Apple pie", found.getTitle());
+        assertEquals(1, found.getVersion());
+    }
+}
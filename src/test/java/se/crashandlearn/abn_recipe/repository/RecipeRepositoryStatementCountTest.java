@@ -0,0 +1,137 @@
+package se.crashandlearn.abn_recipe.repository;
+
+import jakarta.annotation.Resource;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.crashandlearn.abn_recipe.bulk.ImportedChunk;
+import se.crashandlearn.abn_recipe.bulk.RecipeImporter;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeField;
+import se.crashandlearn.abn_recipe.model.RecipeSummary;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statementcount",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "recipe.ingredients.batch-size=1000"})
+class RecipeRepositoryStatementCountTest {
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    EntityManagerFactory entityManagerFactory;
+    @Resource
+    JdbcTemplate jdbcTemplate;
+    @Resource
+    RecipeImporter importer;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        repository.saveAll(IntStream.range(0, 1000)
+                .mapToObj(i -> Recipe.builder()
+                        .title("Pie " + i)
+                        .vegetarian(i % 2 == 0)
+                        .servings(i % 6)
+                        .ingredients(new HashSet<>(List.of("Flour", i % 2 == 0 ? "Carrot" : "Meat")))
+                        .instruction("Bake pie " + i)
+                        .build())
+                .toList());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void givenProjection_whenFindFiltered_thenOnlyRecipeColumnsAreRead() {
+        List<Recipe> recipes = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty(),
+                Optional.empty(), 10, EnumSet.of(RecipeField.ID, RecipeField.TITLE));
+
+        assertEquals(10, recipes.size());
+        assertEquals("Pie 0", recipes.get(0).getTitle());
+        assertNull(recipes.get(0).getInstruction());
+        assertNull(recipes.get(0).getIngredients());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void given1000Recipes_whenFindFiltered_thenRecipesAndIngredientsAreReadInTwoStatements() {
+        List<Recipe> recipes = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Flour")), Optional.empty(), Optional.empty());
+
+        assertEquals(1000, recipes.size());
+        assertEquals(2, recipes.get(0).getIngredients().size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void given1000Recipes_whenFindFilteredSummaries_thenOneStatementIsUsed() {
+        List<RecipeSummary> summaries = repository.findFilteredSummaries(Optional.of(true), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+
+        assertEquals(500, summaries.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void givenOneIngredientReplaced_whenUpdate_thenOnlyChangedRowsAndColumnsAreWritten() {
+        Recipe stored = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Carrot")), Optional.empty(), Optional.empty(),
+                Optional.empty(), 1).get(0);
+        statistics.clear();
+
+        Recipe updated = repository.update(stored.getId(), recipe -> {
+            // Not in the update, so kept if the instruction column is not written
+            jdbcTemplate.update("update recipe set instruction = 'Changed elsewhere' where id = ?", recipe.getId());
+            recipe.setServings(5);
+            recipe.getIngredients().remove("carrot");
+            recipe.getIngredients().add("meat");
+        }).orElseThrow();
+
+        assertEquals(Set.of("flour", "meat"), updated.getIngredients());
+        assertEquals(stored.getVersion() + 1, updated.getVersion());
+        assertEquals(1, statistics.getEntityUpdateCount());
+        assertEquals(1, statistics.getCollectionUpdateCount());
+        assertEquals(0, statistics.getCollectionRecreateCount());
+        // The recipe, its ingredients, the recipe update, one delete and one insert
+        assertEquals(5, statistics.getPrepareStatementCount());
+        assertEquals("Changed elsewhere", jdbcTemplate.queryForObject("select instruction from recipe where id = ?", String.class, stored.getId()));
+    }
+
+    @Test
+    void given1000StoredRecipes_whenImported_thenTheyAreLoadedWithOneStatement() throws Exception {
+        String recipes = repository.findFilteredSummaries(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()).stream()
+                .map(summary -> "{\"id\":" + summary.id() + ",\"title\":\"Imported pie\",\"servings\":2,\"ingredients\":[\"Flour\"],\"instruction\":\"Bake\"}")
+                .collect(Collectors.joining("\n"));
+        statistics.clear();
+
+        List<ImportedChunk> chunks = importer.importRecipes(new ByteArrayInputStream(recipes.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(List.of(new ImportedChunk(0, 1000, null)), chunks);
+        assertEquals(1000, statistics.getEntityUpdateCount());
+        assertEquals(1000, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionFetchCount());
+        // Merged one at a time, every recipe and its ingredients would be read with two more statements
+        assertTrue(statistics.getPrepareStatementCount() < 2000);
+    }
+}
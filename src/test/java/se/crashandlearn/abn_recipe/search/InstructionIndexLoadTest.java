@@ -0,0 +1,55 @@
+package se.crashandlearn.abn_recipe.search;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:instructionindexload")
+class InstructionIndexLoadTest {
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    AutowireCapableBeanFactory beanFactory;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenInstructionUpdatedWhileIndexWasStopped_whenStarted_thenIndexIsRebuilt() {
+        Recipe saved = repository.save(Recipe.builder().title("Veggie pie").vegetarian(true).servings(4)
+                .ingredients(new HashSet<>(List.of("Flour"))).instruction("Add chopped carrots").build());
+        InstructionIndex stopped = start();
+        assertEquals(List.of(saved.getId()), stopped.search(List.of("carrot")));
+        stopped.close();
+
+        saved.setInstruction("Add chopped meat");
+        repository.save(saved);
+
+        InstructionIndex started = start();
+        assertEquals(List.of(), started.search(List.of("carrot")));
+        assertEquals(List.of(saved.getId()), started.search(List.of("meat")));
+    }
+
+    private InstructionIndex start() {
+        InstructionIndex index = new InstructionIndex(directory.toString(), 10);
+        beanFactory.autowireBean(index);
+        index.afterSingletonsInstantiated();
+        return index;
+    }
+}
@@ -0,0 +1,173 @@
+package se.crashandlearn.abn_recipe.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstructionIndexTest {
+
+    private InstructionIndex index;
+
+    @BeforeEach
+    void setup() {
+        index = new InstructionIndex("", 10);
+        index.put(1L, 0, "* Knead Flour and Water to make Dough.\n* Add chopped Carrot and Broccoli\n * Cook and serve!");
+        index.put(2L, 0, "* Knead Flour and Water to make Dough.\n* Add chopped Meat\n * Cook and serve!");
+        index.put(3L, 0, "* Add chopped mushrooms\n * Chop more mushrooms, then bake the mushrooms in the oven");
+    }
+
+    @Test
+    void givenWords_whenAnalyze_thenLowercaseAndStemmed() {
+        assertEquals(List.of("add", "chop", "mushroom", "bake", "in", "the", "oven"), InstructionAnalyzer.analyze("Add chopped Mushrooms, baked in the oven"));
+        assertEquals(List.of("knead", "berri", "caress", "poni", "hop", "sing", "potato"), InstructionAnalyzer.analyze("kneading berries caresses ponies hopping singing potatoes"));
+    }
+
+    @Test
+    void givenPhrase_whenSearch_thenOnlyConsecutiveWordsMatch() {
+        assertEquals(List.of(3L), index.search(List.of("Add chopped mushroom")));
+        assertEquals(List.of(), index.search(List.of("chopped Flour")));
+        assertEquals(List.of(2L), index.search(List.of("make dough", "add chopped meat")));
+        assertEquals(List.of(), index.search(List.of("knead dough")));
+    }
+
+    @Test
+    void givenPrefix_whenSearch_thenExpandsToAllTerms() {
+        assertEquals(List.of(1L), index.search(List.of("brocc*")));
+        assertEquals(List.of(1L), index.search(List.of("carrot and bro*")));
+        assertEquals(3, index.search(List.of("ch*")).size());
+    }
+
+    @Test
+    void givenSeveralMatches_whenSearch_thenMostRelevantFirst() {
+        index.put(4L, 0, "Mushroom soup, serve warm");
+        assertEquals(List.of(3L, 4L), index.search(List.of("mushroom")));
+    }
+
+    @Test
+    void givenRecipeUpdatedOrRemoved_whenSearch_thenOldTermsAreGone() {
+        index.put(2L, 1, "Boil the potatoes");
+        index.remove(3L);
+
+        assertEquals(List.of(), index.search(List.of("meat")));
+        assertEquals(List.of(), index.search(List.of("mushroom")));
+        assertEquals(List.of(2L), index.search(List.of("potato")));
+    }
+
+    @Test
+    void givenSegmentAndJournal_whenRead_thenSameContent(@TempDir Path directory) {
+        InstructionIndexStore store = new InstructionIndexStore(directory);
+        Map<String, Map<Long, int[]>> postings = new HashMap<>();
+        postings.put("chop", Map.of(1L, new int[]{1, 4}));
+        store.writeSegment(postings, Map.of(1L, 5), Map.of(1L, 3L));
+        store.appendUpsert(2L, 0, "Chop the onion");
+        store.appendDelete(1L);
+
+        InstructionIndexStore reopened = new InstructionIndexStore(directory);
+        InstructionIndexStore.Segment segment = reopened.readSegment().orElseThrow();
+        assertArrayEquals(new int[]{1, 4}, segment.postings().get("chop").get(1L));
+        assertEquals(5, segment.lengths().get(1L));
+        assertEquals(3L, segment.versions().get(1L));
+
+        List<String> replayed = new ArrayList<>();
+        reopened.replayJournal((id, upsert) -> replayed.add(id + ":" + upsert.instruction()), id -> replayed.add("-" + id));
+        assertEquals(List.of("2:Chop the onion", "-1"), replayed);
+        assertEquals(2, reopened.journalSize());
+        assertTrue(reopened.readSegment().isPresent());
+    }
+
+    @Test
+    void givenJournalRolledForSegmentNotWritten_whenReplayed_thenRolledEntriesComeFirst(@TempDir Path directory) {
+        InstructionIndexStore store = new InstructionIndexStore(directory);
+        store.writeSegment(Map.of(), Map.of(), Map.of());
+        store.appendUpsert(1L, 0, "Chop the onion");
+        store.rollJournal();
+        store.appendUpsert(1L, 1, "Slice the onion");
+        store.rollJournal();
+        store.appendDelete(2L);
+
+        List<String> replayed = new ArrayList<>();
+        new InstructionIndexStore(directory).replayJournal((id, upsert) -> replayed.add(id + ":" + upsert.instruction()), id -> replayed.add("-" + id));
+        assertEquals(List.of("1:Chop the onion", "1:Slice the onion", "-2"), replayed);
+
+        store.writeSegment(Map.of(), Map.of(), Map.of());
+        replayed.clear();
+        new InstructionIndexStore(directory).replayJournal((id, upsert) -> replayed.add(id + ":" + upsert.instruction()), id -> replayed.add("-" + id));
+        assertEquals(List.of("-2"), replayed);
+    }
+
+    @Test
+    void givenJournalLimitReached_whenWritingOn_thenSegmentIsCompactedInBackground(@TempDir Path directory) throws InterruptedException {
+        InstructionIndex stored = new InstructionIndex(directory.toString(), 2);
+        stored.put(1L, 0, "Chop the onion");
+        stored.put(2L, 0, "Slice the carrot");
+        stored.put(3L, 0, "Peel the potato");
+        for (int i = 0; i < 100 && !Files.exists(directory.resolve("instructions.seg")); i++) {
+            Thread.sleep(50);
+        }
+
+        InstructionIndexStore.Segment segment = new InstructionIndexStore(directory).readSegment().orElseThrow();
+        assertTrue(segment.lengths().keySet().containsAll(List.of(1L, 2L)));
+        stored.close();
+        assertEquals(Set.of(1L, 2L, 3L), new InstructionIndexStore(directory).readSegment().orElseThrow().lengths().keySet());
+        assertFalse(Files.exists(directory.resolve("instructions.journal")));
+        assertFalse(Files.exists(directory.resolve("instructions.journal.rolled")));
+    }
+
+    @Test
+    void givenTermLongerThan64KB_whenSegmentWrittenAndRead_thenSameTerm(@TempDir Path directory) {
+        String term = "ä".repeat(40_000);
+        InstructionIndexStore store = new InstructionIndexStore(directory);
+        store.writeSegment(Map.of(term, Map.of(1L, new int[]{0})), Map.of(1L, 1), Map.of(1L, 0L));
+
+        InstructionIndexStore.Segment segment = new InstructionIndexStore(directory).readSegment().orElseThrow();
+        assertArrayEquals(new int[]{0}, segment.postings().get(term).get(1L));
+    }
+
+    @Test
+    void givenLongUnbrokenToken_whenIndexedAndClosed_thenSegmentHoldsShortenedTerm(@TempDir Path directory) {
+        String blob = "QUJO".repeat(20_000);
+        InstructionIndex stored = new InstructionIndex(directory.toString(), 10);
+        stored.put(1L, 0, "Paste " + blob + " and stir");
+        stored.close();
+
+        InstructionIndexStore.Segment segment = new InstructionIndexStore(directory).readSegment().orElseThrow();
+        assertTrue(segment.postings().keySet().stream().allMatch(term -> term.length() <= InstructionAnalyzer.MAX_TERM_LENGTH));
+        assertEquals(4, segment.lengths().get(1L));
+        assertEquals(List.of(1L), stored.search(List.of("paste " + blob + " and stir")));
+    }
+
+    @Test
+    void givenPartiallyWrittenEntry_whenReplayedAndAppended_thenLaterEntriesAreRead(@TempDir Path directory) throws IOException {
+        InstructionIndexStore store = new InstructionIndexStore(directory);
+        store.writeSegment(Map.of(), Map.of(), Map.of());
+        store.appendUpsert(1L, 0, "Chop the onion");
+        store.closeJournal();
+        Files.write(directory.resolve("instructions.journal"), new byte[]{1, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        InstructionIndexStore reopened = new InstructionIndexStore(directory);
+        List<String> replayed = new ArrayList<>();
+        reopened.replayJournal((id, upsert) -> replayed.add(id + ":" + upsert.instruction()), id -> replayed.add("-" + id));
+        assertEquals(List.of("1:Chop the onion"), replayed);
+        reopened.appendDelete(1L);
+        reopened.closeJournal();
+
+        replayed.clear();
+        new InstructionIndexStore(directory).replayJournal((id, upsert) -> replayed.add(id + ":" + upsert.instruction()), id -> replayed.add("-" + id));
+        assertEquals(List.of("1:Chop the onion", "-1"), replayed);
+    }
+}
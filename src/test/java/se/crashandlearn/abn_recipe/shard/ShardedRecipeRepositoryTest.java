@@ -0,0 +1,129 @@
+package se.crashandlearn.abn_recipe.shard;
+
+import jakarta.annotation.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.crashandlearn.abn_recipe.bulk.RecipeImporter;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shardcatalog",
+        "recipe.shards.enabled=true",
+        "recipe.shards.urls=jdbc:h2:mem:shard0,jdbc:h2:mem:shard1,jdbc:h2:mem:shard2",
+        "recipe.stream.fetch-size=7"})
+class ShardedRecipeRepositoryTest {
+    @Resource
+    RecipeRepository repository;
+    @Resource
+    Shards shards;
+    @Resource
+    DataSource dataSource;
+    @Resource
+    RecipeImporter importer;
+
+    @AfterEach
+    void cleanup() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void givenNewRecipes_whenSaved_thenEachIsStoredOnlyOnItsShard() {
+        List<Long> ids = save(30).stream().map(Recipe::getId).toList();
+
+        List<Long> stored = new ArrayList<>();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            List<Long> shardIds = new JdbcTemplate(shards.dataSource(shard)).queryForList("select id from recipe", Long.class);
+            assertFalse(shardIds.isEmpty());
+            for (Long id : shardIds) {
+                assertEquals(shard, shards.shardOf(id));
+            }
+            stored.addAll(shardIds);
+        }
+        assertEquals(new HashSet<>(ids), new HashSet<>(stored));
+        assertEquals(30, stored.size());
+        assertEquals(0, new JdbcTemplate(dataSource).queryForObject("select count(*) from recipe", Long.class));
+    }
+
+    @Test
+    void givenRecipesOnAllShards_whenFindFilteredByPage_thenPagesAreMergedInIdOrder() {
+        List<Long> expected = save(30).stream()
+                .filter(recipe -> recipe.getIngredients().contains("carrot"))
+                .map(Recipe::getId)
+                .sorted()
+                .toList();
+
+        List<Long> found = new ArrayList<>();
+        Optional<Long> after = Optional.empty();
+        List<Recipe> page;
+        do {
+            page = repository.findFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Carrot")), Optional.empty(), Optional.empty(), after, 4);
+            page.forEach(recipe -> assertTrue(recipe.getIngredients().contains("carrot")));
+            page.forEach(recipe -> found.add(recipe.getId()));
+            after = page.isEmpty() ? after : Optional.of(page.get(page.size() - 1).getId());
+        } while (page.size() == 4);
+
+        assertEquals(expected, found);
+
+        List<Long> streamed = new ArrayList<>();
+        repository.scrollFiltered(Optional.empty(), Optional.empty(), Optional.of(List.of("Carrot")), Optional.empty(), Optional.empty(),
+                recipe -> streamed.add(recipe.getId()));
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    void givenSavedRecipe_whenUpdatedAndDeleted_thenItsShardIsChanged() {
+        Recipe saved = save(1).get(0);
+        saved.setTitle("Carrot cake");
+
+        Recipe updated = repository.save(saved);
+
+        assertEquals(saved.getId(), updated.getId());
+        assertEquals(1, updated.getVersion());
+        assertEquals("Carrot cake", repository.findById(saved.getId()).orElseThrow().getTitle());
+
+        repository.deleteById(saved.getId());
+
+        assertTrue(repository.findById(saved.getId()).isEmpty());
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void givenBulkImport_whenImported_thenRecipesAreSpreadOverShards() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        IntStream.range(0, 12).forEach(i -> ndjson.append("{\"title\": \"Pie ").append(i).append("\", \"ingredients\": [\"Apple\"]}\n"));
+
+        importer.importRecipes(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(12, repository.count());
+        for (int shard = 0; shard < shards.count(); shard++) {
+            assertEquals(4, new JdbcTemplate(shards.dataSource(shard)).queryForObject("select count(*) from recipe", Long.class));
+        }
+    }
+
+    private List<Recipe> save(int count) {
+        return repository.saveAll(IntStream.range(0, count)
+                .mapToObj(i -> Recipe.builder()
+                        .title("Pie " + i)
+                        .servings(i % 6)
+                        .ingredients(new HashSet<>(List.of("Flour", i % 3 == 0 ? "Carrot" : "Apple")))
+                        .instruction("Bake pie " + i)
+                        .build())
+                .toList());
+    }
+}
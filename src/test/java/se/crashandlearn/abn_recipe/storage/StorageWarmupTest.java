@@ -0,0 +1,48 @@
+package se.crashandlearn.abn_recipe.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageWarmupTest {
+
+    @TempDir
+    Path storage;
+
+    @Test
+    void givenProdProfile_whenRestarted_thenRecipesAreKeptAndWarmedUp() {
+        long id;
+        try (ConfigurableApplicationContext context = start()) {
+            assertEquals(0, context.getBean(StorageWarmup.class).warmedRecipes());
+            id = context.getBean(RecipeRepository.class)
+                    .save(Recipe.builder().title("Pie").vegetarian(true).servings(2).ingredients(Set.of("Apple")).instruction("Bake").build())
+                    .getId();
+        }
+        assertTrue(Files.exists(storage.resolve("recipes.mv.db")));
+
+        try (ConfigurableApplicationContext context = start()) {
+            assertEquals(1, context.getBean(StorageWarmup.class).warmedRecipes());
+            Recipe recipe = context.getBean(RecipeRepository.class).findById(id).orElseThrow();
+            assertEquals("Pie", recipe.getTitle());
+            assertEquals(Set.of("apple"), recipe.getIngredients());
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(AbnRecipeApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("prod")
+                .run("--recipe.storage.dir=" + storage.toAbsolutePath());
+    }
+}
@@ -0,0 +1,156 @@
+package se.crashandlearn.abn_recipe.writebehind;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.crashandlearn.abn_recipe.AbnRecipeApplication;
+import se.crashandlearn.abn_recipe.change.RecipeChangeLog;
+import se.crashandlearn.abn_recipe.model.Recipe;
+import se.crashandlearn.abn_recipe.model.RecipeChange;
+import se.crashandlearn.abn_recipe.repository.RecipeRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeWriteBehindTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenBurstOfUpdates_whenFlushed_thenLastOneIsWrittenWithItsVersion() throws IOException {
+        try (ConfigurableApplicationContext context = start("write-behind-burst")) {
+            RecipeRepository repository = context.getBean(RecipeRepository.class);
+            RecipeWriteBehind writeBehind = context.getBean(RecipeWriteBehind.class);
+            RecipeChangeLog changeLog = context.getBean(RecipeChangeLog.class);
+            Recipe current = repository.save(pie("Pie"));
+            long since = changeLog.last();
+
+            for (int i = 1; i <= 3; i++) {
+                current = writeBehind.update(current, pie("Pie " + i));
+            }
+            assertEquals(3, writeBehind.pending(current.getId()).orElseThrow().getVersion());
+            assertEquals("Pie 3", writeBehind.pending(current.getId()).orElseThrow().getTitle());
+            assertEquals(0, repository.findVersions(List.of(current.getId())).get(0).version());
+            assertEquals(1, segments());
+
+            writeBehind.flush();
+
+            Recipe stored = repository.findById(current.getId()).orElseThrow();
+            assertEquals("Pie 3", stored.getTitle());
+            assertEquals(3, stored.getVersion());
+            assertTrue(writeBehind.pending(current.getId()).isEmpty());
+            assertEquals(0, segments());
+            List<RecipeChange> changes = changeLog.since(since, 10);
+            assertEquals(1, changes.size());
+            assertEquals(RecipeChange.Operation.UPDATED, changes.get(0).getOperation());
+            assertEquals(3, changes.get(0).getVersion());
+        }
+    }
+
+    @Test
+    void givenUpdateLeftInLog_whenStarted_thenItIsReadAndFlushed() throws IOException {
+        long id;
+        try (ConfigurableApplicationContext context = start("write-behind-crash")) {
+            id = context.getBean(RecipeRepository.class).save(pie("Pie")).getId();
+        }
+        Recipe crashed = pie("Crashed pie");
+        crashed.setId(id);
+        crashed.setVersion(1);
+        crashed.setLastModified(Instant.now());
+        RecipeWriteAheadLog log = new RecipeWriteAheadLog(directory);
+        log.append(crashed);
+        log.close();
+
+        try (ConfigurableApplicationContext context = start("write-behind-crash")) {
+            RecipeWriteBehind writeBehind = context.getBean(RecipeWriteBehind.class);
+            assertEquals("Crashed pie", writeBehind.pending(id).orElseThrow().getTitle());
+            assertEquals(Set.of("apple", "flour"), writeBehind.pending(id).orElseThrow().getIngredients());
+
+            writeBehind.flush();
+            Recipe stored = context.getBean(RecipeRepository.class).findById(id).orElseThrow();
+            assertEquals("Crashed pie", stored.getTitle());
+            assertEquals(1, stored.getVersion());
+            assertEquals(0, segments());
+        }
+    }
+
+    @Test
+    void givenPendingUpdate_whenDeleted_thenNotWritten() {
+        try (ConfigurableApplicationContext context = start("write-behind-delete")) {
+            RecipeRepository repository = context.getBean(RecipeRepository.class);
+            RecipeWriteBehind writeBehind = context.getBean(RecipeWriteBehind.class);
+            Recipe saved = repository.save(pie("Pie"));
+            writeBehind.update(saved, pie("Updated pie"));
+
+            writeBehind.delete(saved.getId(), () -> repository.deleteById(saved.getId()));
+            writeBehind.flush();
+
+            assertTrue(writeBehind.pending(saved.getId()).isEmpty());
+            assertTrue(repository.findById(saved.getId()).isEmpty());
+        }
+    }
+
+    @Test
+    void givenConcurrentUpdates_whenForced_thenEveryUpdateIsInTheLog() throws Exception {
+        RecipeWriteAheadLog log = new RecipeWriteAheadLog(directory);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> updates = LongStream.range(0, 200)
+                    .mapToObj(id -> threads.submit(() -> {
+                        Recipe recipe = pie("Pie " + id);
+                        recipe.setId(id);
+                        recipe.setLastModified(Instant.now());
+                        log.force(log.append(recipe));
+                    }))
+                    .collect(Collectors.toList());
+            for (Future<?> update : updates) {
+                update.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+        log.close();
+
+        Set<Long> replayed = new HashSet<>();
+        new RecipeWriteAheadLog(directory).replay(recipe -> replayed.add(recipe.getId()));
+        assertEquals(200, replayed.size());
+    }
+
+    private long segments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static Recipe pie(String title) {
+        return Recipe.builder().title(title).vegetarian(true).servings(2).ingredients(Set.of("Apple", "Flour")).instruction("Bake").build();
+    }
+
+    private ConfigurableApplicationContext start(String database) {
+        return new SpringApplicationBuilder(AbnRecipeApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                        "--recipe.write-behind.enabled=true",
+                        "--recipe.write-behind.dir=" + directory.toAbsolutePath(),
+                        "--recipe.write-behind.interval-ms=3600000");
+    }
+}